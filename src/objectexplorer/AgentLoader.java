@@ -0,0 +1,172 @@
+package objectexplorer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Loads the agent of this library into a running Java VM, through the Attach
+ * API, so that {@link MemoryMeasurer} can use an {@link Instrumentation}
+ * without the VM having been started with {@code -javaagent}.
+ *
+ * <p>Typical use is a single call to {@link #install()} early on, e.g.
+ * {@code AgentLoader.install();}, which loads the agent into the current VM.
+ *
+ * @see Main
+ */
+public final class AgentLoader {
+  private static final String VIRTUAL_MACHINE = "com.sun.tools.attach.VirtualMachine";
+
+  private AgentLoader() { }
+
+  /**
+   * Loads the agent into the current VM, unless it has already been loaded
+   * (either by a previous call, or through {@code -javaagent}), and returns
+   * the {@link Instrumentation} it provides.
+   *
+   * <p>Since Java 9, a VM may not attach to itself, unless it was started with
+   * {@code -Djdk.attach.allowAttachSelf=true}; if that is the case, a helper
+   * VM is launched to attach to this one instead.
+   *
+   * @throws IllegalStateException if the agent could not be loaded
+   */
+  public static synchronized Instrumentation install() {
+    Instrumentation instrumentation = InstrumentationGrabber.instrumentationIfAvailable();
+    if (instrumentation != null) {
+      return instrumentation;
+    }
+    String pid = currentPid();
+    String agentJar = agentJar().getAbsolutePath();
+    try {
+      loadAgent(pid, agentJar, null);
+    } catch (Exception selfAttachFailure) {
+      try {
+        loadAgentFromHelperVm(pid, agentJar);
+      } catch (Exception e) {
+        IllegalStateException failure = new IllegalStateException(
+            "Could not load the agent into the current VM", e);
+        failure.addSuppressed(selfAttachFailure);
+        throw failure;
+      }
+    }
+    return InstrumentationGrabber.instrumentation();
+  }
+
+  /**
+   * Entry point of the helper VM: attaches to the VM with the process id
+   * {@code args[0]} and loads the agent jar {@code args[1]} into it.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("Usage: java " + AgentLoader.class.getName() + " <pid> <agent jar>");
+      System.exit(2);
+    }
+    loadAgent(args[0], args[1], null);
+  }
+
+  /**
+   * Attaches to the VM with the given process id, and loads the given agent
+   * jar into it, passing it the given arguments. This returns after the
+   * {@code agentmain} method of the agent has returned.
+   */
+  static void loadAgent(String pid, String agentJar, String agentArgs) throws Exception {
+    Class<?> virtualMachine = attachApi();
+    Object vm = virtualMachine.getMethod("attach", String.class).invoke(null, pid);
+    try {
+      virtualMachine.getMethod("loadAgent", String.class, String.class)
+          .invoke(vm, agentJar, agentArgs);
+    } finally {
+      virtualMachine.getMethod("detach").invoke(vm);
+    }
+  }
+
+  private static void loadAgentFromHelperVm(String pid, String agentJar)
+      throws IOException, InterruptedException {
+    String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+    Process helper = new ProcessBuilder(java, "-cp", codeSource().getAbsolutePath(),
+        AgentLoader.class.getName(), pid, agentJar).inheritIO().start();
+    int exitCode = helper.waitFor();
+    if (exitCode != 0) {
+      throw new IOException("The helper VM exited with code " + exitCode);
+    }
+  }
+
+  /**
+   * Returns the VirtualMachine class of the Attach API, which resides in
+   * {@code tools.jar} before Java 9, and in the {@code jdk.attach} module since.
+   */
+  private static Class<?> attachApi() throws ClassNotFoundException, IOException {
+    try {
+      return Class.forName(VIRTUAL_MACHINE);
+    } catch (ClassNotFoundException e) {
+      File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+      if (!toolsJar.isFile()) {
+        throw new ClassNotFoundException("The Attach API is not available; "
+            + "a JDK (rather than a JRE) is required", e);
+      }
+      ClassLoader loader = new URLClassLoader(new URL[] { toolsJar.toURI().toURL() });
+      return Class.forName(VIRTUAL_MACHINE, true, loader);
+    }
+  }
+
+  private static String currentPid() {
+    try {
+      // Java 9+: ProcessHandle.current().pid()
+      Class<?> processHandle = Class.forName("java.lang.ProcessHandle");
+      Object current = processHandle.getMethod("current").invoke(null);
+      Method pid = processHandle.getMethod("pid");
+      return String.valueOf(pid.invoke(current));
+    } catch (Exception e) {
+      // the name of the runtime bean is conventionally pid@hostname
+      String name = ManagementFactory.getRuntimeMXBean().getName();
+      return name.substring(0, name.indexOf('@'));
+    }
+  }
+
+  /**
+   * Returns the jar file or the class directory that this library was loaded
+   * from.
+   */
+  static File codeSource() {
+    try {
+      return new File(AgentLoader.class.getProtectionDomain().getCodeSource()
+          .getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Returns a jar that can be loaded as the agent: the jar of this library, or,
+   * if this library was not loaded from a jar, a temporary jar that only
+   * contains a manifest naming the agent class (which is then found on the
+   * class path of the VM).
+   */
+  private static File agentJar() {
+    File codeSource = codeSource();
+    if (codeSource.isFile()) {
+      return codeSource;
+    }
+    try {
+      File jar = File.createTempFile("object-explorer-agent", ".jar");
+      jar.deleteOnExit();
+      Manifest manifest = new Manifest();
+      Attributes attributes = manifest.getMainAttributes();
+      attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+      attributes.put(new Attributes.Name("Agent-Class"), InstrumentationGrabber.class.getName());
+      new JarOutputStream(new FileOutputStream(jar), manifest).close();
+      return jar;
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not create the agent jar", e);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Decides which classes of objects are part of a measured object graph. Unlike
+ * an object predicate, which is asked about every object, a filter decides
+ * once per class: its decisions are cached, so filtering an object only takes
+ * a lookup. {@code Class} objects are shared values, which are never measured:
+ * no filter accepts {@code Class} itself.
+ *
+ * <p>Filters are created by the static factory methods (e.g.
+ * {@link #excludingPackages(String...)}), or by subclassing and implementing
+ * {@link #accept(Class)}. Filters must be thread-safe.
+ *
+ * @see MemoryMeasurer#measureBytes(Object, ClassFilter, FieldFilter,
+ * com.google.common.base.Predicate)
+ * @see ObjectGraphMeasurer#measure(Object, ClassFilter, FieldFilter,
+ * com.google.common.base.Predicate)
+ */
+public abstract class ClassFilter {
+  private static final ClassFilter ACCEPTING_ALL = new ClassFilter() {
+    @Override
+    protected boolean accept(Class<?> type) {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "ClassFilter.acceptingAll()";
+    }
+  };
+
+  private final ClassValue<Boolean> decisions = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return type != Class.class && accept(type);
+    }
+  };
+
+  /**
+   * Decides whether the instances of the given class are to be measured. This
+   * is called (at most) once per class.
+   */
+  protected abstract boolean accept(Class<?> type);
+
+  /**
+   * Returns whether the instances of the given class are to be measured
+   * (never for {@code Class} itself).
+   */
+  public final boolean accepts(Class<?> type) {
+    return decisions.get(type);
+  }
+
+  /**
+   * Returns a filter that accepts all classes.
+   */
+  public static ClassFilter acceptingAll() {
+    return ACCEPTING_ALL;
+  }
+
+  /**
+   * Returns a filter that rejects the classes of the given packages, and of
+   * their subpackages (e.g. {@code "java.util"} also rejects
+   * {@code java.util.concurrent.ConcurrentHashMap}). Arrays are rejected if
+   * their (innermost) element class is.
+   */
+  public static ClassFilter excludingPackages(String... packageNames) {
+    final ImmutableList<String> packages = ImmutableList.copyOf(packageNames);
+    return new ClassFilter() {
+      @Override
+      protected boolean accept(Class<?> type) {
+        String name = elementType(type).getName();
+        for (String packageName : packages) {
+          if (name.startsWith(packageName) && name.length() > packageName.length()
+              && name.charAt(packageName.length()) == '.') {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public String toString() {
+        return "ClassFilter.excludingPackages(" + packages + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a filter that rejects the given classes, and their subclasses
+   * (or implementations, for interfaces).
+   */
+  public static ClassFilter excludingTypes(Class<?>... types) {
+    final ImmutableList<Class<?>> excluded = ImmutableList.copyOf(types);
+    return new ClassFilter() {
+      @Override
+      protected boolean accept(Class<?> type) {
+        for (Class<?> excludedType : excluded) {
+          if (excludedType.isAssignableFrom(type)) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public String toString() {
+        return "ClassFilter.excludingTypes(" + excluded + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a filter that rejects the classes that are annotated with the
+   * given annotation (which must be retained at runtime). Arrays are rejected
+   * if their (innermost) element class is.
+   */
+  public static ClassFilter excludingAnnotatedWith(
+      final Class<? extends Annotation> annotationType) {
+    Preconditions.checkNotNull(annotationType);
+    return new ClassFilter() {
+      @Override
+      protected boolean accept(Class<?> type) {
+        return !elementType(type).isAnnotationPresent(annotationType);
+      }
+
+      @Override
+      public String toString() {
+        return "ClassFilter.excludingAnnotatedWith(" + annotationType.getName() + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a filter that accepts the classes that all the given filters
+   * accept.
+   */
+  public static ClassFilter and(ClassFilter... filters) {
+    final ImmutableList<ClassFilter> components = ImmutableList.copyOf(filters);
+    return new ClassFilter() {
+      @Override
+      protected boolean accept(Class<?> type) {
+        for (ClassFilter filter : components) {
+          if (!filter.accepts(type)) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public String toString() {
+        return "ClassFilter.and(" + components + ")";
+      }
+    };
+  }
+
+  private static Class<?> elementType(Class<?> type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    return type;
+  }
+}
@@ -0,0 +1,268 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * The number of instances and the bytes of an object graph, broken down by
+ * class. Classes are ordered by their bytes, largest first.
+ *
+ * <p>The histograms of heap dumps (see {@link HprofHeap}) only know the names
+ * of the classes, since those need not be loadable in the analyzing VM; their
+ * entries have no {@link Entry#getType() type}.
+ *
+ * @see MemoryMeasurer#measureHistogram(Object, com.google.common.base.Predicate)
+ */
+public final class ClassHistogram {
+  private final ImmutableList<Entry> entries;
+  private final ImmutableMap<Class<?>, Entry> entriesByType;
+  private final ImmutableMap<String, Entry> entriesByTypeName;
+  private final long totalInstances;
+  private final long totalBytes;
+
+  private ClassHistogram(ImmutableList<Entry> entries) {
+    this.entries = entries;
+    ImmutableMap.Builder<Class<?>, Entry> byType = ImmutableMap.builder();
+    Map<String, Entry> byTypeName = Maps.newHashMap();
+    long instances = 0;
+    long bytes = 0;
+    for (Entry entry : entries) {
+      if (entry.type != null) {
+        byType.put(entry.type, entry);
+      }
+      // classes of the same name, but of different class loaders: the largest wins
+      if (!byTypeName.containsKey(entry.typeName)) {
+        byTypeName.put(entry.typeName, entry);
+      }
+      instances += entry.instances;
+      bytes += entry.bytes;
+    }
+    this.totalInstances = instances;
+    this.totalBytes = bytes;
+    this.entriesByType = byType.build();
+    this.entriesByTypeName = ImmutableMap.copyOf(byTypeName);
+  }
+
+  /**
+   * Creates the histogram of the given entries (which are sorted, in place).
+   */
+  static ClassHistogram of(List<Entry> entries) {
+    Collections.sort(entries, largestFirst);
+    return new ClassHistogram(ImmutableList.copyOf(entries));
+  }
+
+  /**
+   * Returns the entries of all classes, largest (in bytes) first.
+   */
+  public ImmutableList<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Returns the entries of the (at most) {@code n} classes with the most
+   * bytes, largest first.
+   */
+  public ImmutableList<Entry> top(int n) {
+    Preconditions.checkArgument(n >= 0, "Negative n");
+    return entries.subList(0, Math.min(n, entries.size()));
+  }
+
+  /**
+   * Returns the entry of the given class, or {@code null} if the object graph
+   * has no instances of it.
+   */
+  public @Nullable Entry get(Class<?> type) {
+    return entriesByType.get(type);
+  }
+
+  /**
+   * Returns the entry of the class with the given name (as given by
+   * {@link Class#getName()}), or {@code null} if the object graph has no
+   * instances of it. If several classes of that name (loaded by different
+   * class loaders) have instances, the largest of their entries is returned.
+   */
+  public @Nullable Entry get(String typeName) {
+    return entriesByTypeName.get(typeName);
+  }
+
+  /**
+   * Returns the number of objects of the object graph.
+   */
+  public long getTotalInstances() {
+    return totalInstances;
+  }
+
+  /**
+   * Returns the memory footprint, in bytes, of the object graph.
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns the histogram as a table, like {@code jmap -histo} does.
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.format(
+        "%5s %14s %16s %14s  %s%n", "num", "#instances", "#bytes", "#elements", "class name"));
+    int num = 0;
+    for (Entry entry : entries) {
+      sb.append(String.format("%4d: %14d %16d %14s  %s%n", ++num, entry.instances, entry.bytes,
+          entry.isArray() ? String.valueOf(entry.arrayElements) : "",
+          entry.typeName));
+    }
+    sb.append(String.format("Total %14d %16d%n", totalInstances, totalBytes));
+    return sb.toString();
+  }
+
+  /**
+   * The instances of a class in an object graph.
+   */
+  public static final class Entry {
+    private final @Nullable Class<?> type;
+    private final String typeName;
+    private final long instances;
+    private final long bytes;
+    private final long arrayElements;
+
+    Entry(Class<?> type, long instances, long bytes, long arrayElements) {
+      this(type, type.getName(), instances, bytes, arrayElements);
+    }
+
+    Entry(@Nullable Class<?> type, String typeName, long instances, long bytes,
+        long arrayElements) {
+      this.type = type;
+      this.typeName = typeName;
+      this.instances = instances;
+      this.bytes = bytes;
+      this.arrayElements = arrayElements;
+    }
+
+    /**
+     * Returns the class, or {@code null} if the histogram was read from a heap
+     * dump.
+     */
+    public @Nullable Class<?> getType() {
+      return type;
+    }
+
+    /**
+     * Returns the name of the class, as given by {@link Class#getName()}.
+     */
+    public String getTypeName() {
+      return typeName;
+    }
+
+    private boolean isArray() {
+      return typeName.startsWith("[");
+    }
+
+    /**
+     * Returns the number of instances of the class.
+     */
+    public long getInstances() {
+      return instances;
+    }
+
+    /**
+     * Returns the total shallow size, in bytes, of the instances of the class.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the total length of the instances of the class, if it is an
+     * array class, or zero otherwise.
+     */
+    public long getArrayElements() {
+      return arrayElements;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Type", typeName)
+      .add("Instances", instances)
+      .add("Bytes", bytes)
+      .add("ArrayElements", arrayElements)
+      .toString();
+    }
+  }
+
+  private static final Comparator<Entry> largestFirst = new Comparator<Entry>() {
+    public int compare(Entry a, Entry b) {
+      if (a.bytes != b.bytes) {
+        return a.bytes > b.bytes ? -1 : 1;
+      }
+      return a.typeName.compareTo(b.typeName);
+    }
+  };
+
+  /**
+   * Accumulates the counts of a histogram, in parallel primitive arrays that
+   * are indexed by the number that an {@link ObjectIndex} gives each class.
+   */
+  static final class Accumulator {
+    private final ObjectIndex classes = new ObjectIndex();
+    private long[] instances = new long[16];
+    private long[] bytes = new long[16];
+    private long[] arrayElements = new long[16];
+
+    // objects mostly come in runs of the same class
+    private Class<?> lastType;
+    private int lastNumber;
+
+    /**
+     * Counts an object, whose (shallow) size is given.
+     */
+    void add(Object o, long size) {
+      Class<?> type = o.getClass();
+      if (type != lastType) {
+        lastType = type;
+        lastNumber = numberOf(type);
+      }
+      int k = lastNumber;
+      instances[k]++;
+      bytes[k] += size;
+      if (type.isArray()) {
+        arrayElements[k] += Array.getLength(o);
+      }
+    }
+
+    private int numberOf(Class<?> type) {
+      int k = classes.add(type);
+      if (k < 0) {
+        return ~k;
+      }
+      if (k == instances.length) {
+        instances = Arrays.copyOf(instances, k * 2);
+        bytes = Arrays.copyOf(bytes, k * 2);
+        arrayElements = Arrays.copyOf(arrayElements, k * 2);
+      }
+      return k;
+    }
+
+    ClassHistogram toHistogram() {
+      Entry[] entries = new Entry[classes.size()];
+      for (int k = 0; k < entries.length; k++) {
+        entries[k] = new Entry((Class<?>) classes.get(k), instances[k], bytes[k],
+            arrayElements[k]);
+      }
+      return of(Arrays.asList(entries));
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package objectexplorer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The reflective information that {@link ObjectExplorer} needs in order to
+ * explore the instances of a given class. A plan is computed only once per
+ * class (the first time an instance of it is explored), and then cached.
+ *
+ * <p>For non-array classes, the plan holds all non-static fields declared by
+ * the class and its superclasses, separated into reference and primitive
+ * fields, along with a {@link FieldReader} for each of them. For array
+ * classes, it simply records whether the component type is primitive. A
+ * {@link FieldFilter} keeps plans of its own, with only the fields that it
+ * accepts.
+ */
+final class ClassPlan {
+  private static final ClassValue<ClassPlan> plans = new ClassValue<ClassPlan>() {
+    @Override
+    protected ClassPlan computeValue(Class<?> type) {
+      return new ClassPlan(type);
+    }
+  };
+
+  private static final Field[] NO_FIELDS = new Field[0];
+  private static final FieldReader[] NO_READERS = new FieldReader[0];
+  private static final PrimitiveKind[] NO_KINDS = new PrimitiveKind[0];
+  private static final int[] NO_COUNTS = new int[0];
+
+  /**
+   * The class that this plan describes.
+   */
+  final Class<?> type;
+
+  /**
+   * Whether {@link #type} is an array class.
+   */
+  final boolean isArray;
+
+  /**
+   * Whether {@link #type} is an array class with a primitive component type.
+   */
+  final boolean isPrimitiveArray;
+
+  /**
+   * The component type of {@link #type}, or {@code null} if it is not an
+   * array class.
+   */
+  final Class<?> componentType;
+
+  /**
+   * The kind of {@link #componentType}, or {@code null} if {@link #type} is not
+   * an array of primitives.
+   */
+  final PrimitiveKind componentKind;
+
+  /**
+   * Whether {@link #type} is an array class with an enum component type.
+   */
+  final boolean isEnumArray;
+
+  /**
+   * The non-static, non-primitive fields of {@link #type} (including inherited
+   * ones), or an empty array if {@code type} is an array class.
+   */
+  final Field[] referenceFields;
+
+  /**
+   * The non-static, primitive fields of {@link #type} (including inherited
+   * ones), or an empty array if {@code type} is an array class.
+   */
+  final Field[] primitiveFields;
+
+  /**
+   * The kinds of the {@link #primitiveFields}, in the same order.
+   */
+  final PrimitiveKind[] primitiveFieldKinds;
+
+  /**
+   * The distinct kinds of the {@link #primitiveFields}.
+   */
+  final PrimitiveKind[] primitiveCountKinds;
+
+  /**
+   * How many of the {@link #primitiveFields} are of each of the
+   * {@link #primitiveCountKinds}, in the same order.
+   */
+  final int[] primitiveCounts;
+
+  /**
+   * The readers of the {@link #referenceFields}, in the same order.
+   */
+  final FieldReader[] referenceReaders;
+
+  /**
+   * The readers of the {@link #primitiveFields}, in the same order.
+   */
+  final FieldReader[] primitiveReaders;
+
+  private ClassPlan(Class<?> type) {
+    this.type = type;
+    this.isArray = type.isArray();
+    this.componentType = type.getComponentType();
+    this.isPrimitiveArray = isArray && componentType.isPrimitive();
+    this.componentKind = isPrimitiveArray ? PrimitiveKind.of(componentType) : null;
+    this.isEnumArray = isArray && Enum.class.isAssignableFrom(componentType);
+    if (isArray) {
+      this.referenceFields = NO_FIELDS;
+      this.primitiveFields = NO_FIELDS;
+      this.primitiveFieldKinds = NO_KINDS;
+      this.primitiveCountKinds = NO_KINDS;
+      this.primitiveCounts = NO_COUNTS;
+      this.referenceReaders = NO_READERS;
+      this.primitiveReaders = NO_READERS;
+      return;
+    }
+
+    List<Field> references = Lists.newArrayListWithCapacity(8);
+    List<Field> primitives = Lists.newArrayListWithCapacity(8);
+    for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) continue;
+        if (field.getType().isPrimitive()) {
+          primitives.add(field);
+        } else {
+          references.add(field);
+        }
+      }
+    }
+    this.referenceFields = references.toArray(new Field[references.size()]);
+    this.primitiveFields = primitives.toArray(new Field[primitives.size()]);
+    this.primitiveFieldKinds = new PrimitiveKind[primitiveFields.length];
+    for (int i = 0; i < primitiveFields.length; i++) {
+      primitiveFieldKinds[i] = PrimitiveKind.of(primitiveFields[i].getType());
+    }
+    this.primitiveCountKinds = distinctKinds(primitiveFieldKinds);
+    this.primitiveCounts = countsOf(primitiveCountKinds, primitiveFieldKinds);
+    this.referenceReaders = FieldReader.of(referenceFields);
+    this.primitiveReaders = FieldReader.of(primitiveFields);
+  }
+
+  private ClassPlan(ClassPlan plan, Field[] referenceFields, FieldReader[] referenceReaders,
+      Field[] primitiveFields, PrimitiveKind[] primitiveFieldKinds,
+      FieldReader[] primitiveReaders) {
+    this.type = plan.type;
+    this.isArray = plan.isArray;
+    this.componentType = plan.componentType;
+    this.isPrimitiveArray = plan.isPrimitiveArray;
+    this.componentKind = plan.componentKind;
+    this.isEnumArray = plan.isEnumArray;
+    this.referenceFields = referenceFields;
+    this.referenceReaders = referenceReaders;
+    this.primitiveFields = primitiveFields;
+    this.primitiveFieldKinds = primitiveFieldKinds;
+    this.primitiveCountKinds = distinctKinds(primitiveFieldKinds);
+    this.primitiveCounts = countsOf(primitiveCountKinds, primitiveFieldKinds);
+    this.primitiveReaders = primitiveReaders;
+  }
+
+  private static PrimitiveKind[] distinctKinds(PrimitiveKind[] kinds) {
+    EnumSet<PrimitiveKind> distinct = EnumSet.noneOf(PrimitiveKind.class);
+    Collections.addAll(distinct, kinds);
+    return distinct.toArray(new PrimitiveKind[distinct.size()]);
+  }
+
+  private static int[] countsOf(PrimitiveKind[] distinctKinds, PrimitiveKind[] kinds) {
+    int[] counts = new int[distinctKinds.length];
+    for (PrimitiveKind kind : kinds) {
+      counts[Arrays.asList(distinctKinds).indexOf(kind)]++;
+    }
+    return counts;
+  }
+
+  /**
+   * Returns a plan like this one, but with only the fields that the given
+   * filter accepts (or this plan, if it accepts them all).
+   */
+  ClassPlan retaining(FieldFilter filter) {
+    List<Integer> references = Lists.newArrayListWithCapacity(referenceFields.length);
+    for (int i = 0; i < referenceFields.length; i++) {
+      if (filter.accept(referenceFields[i])) references.add(i);
+    }
+    List<Integer> primitives = Lists.newArrayListWithCapacity(primitiveFields.length);
+    for (int i = 0; i < primitiveFields.length; i++) {
+      if (filter.accept(primitiveFields[i])) primitives.add(i);
+    }
+    if (references.size() == referenceFields.length
+        && primitives.size() == primitiveFields.length) {
+      return this;
+    }
+
+    Field[] retainedReferenceFields = new Field[references.size()];
+    FieldReader[] retainedReferenceReaders = new FieldReader[references.size()];
+    for (int i = 0; i < retainedReferenceFields.length; i++) {
+      retainedReferenceFields[i] = referenceFields[references.get(i)];
+      retainedReferenceReaders[i] = referenceReaders[references.get(i)];
+    }
+    Field[] retainedPrimitiveFields = new Field[primitives.size()];
+    PrimitiveKind[] retainedPrimitiveKinds = new PrimitiveKind[primitives.size()];
+    FieldReader[] retainedPrimitiveReaders = new FieldReader[primitives.size()];
+    for (int i = 0; i < retainedPrimitiveFields.length; i++) {
+      retainedPrimitiveFields[i] = primitiveFields[primitives.get(i)];
+      retainedPrimitiveKinds[i] = primitiveFieldKinds[primitives.get(i)];
+      retainedPrimitiveReaders[i] = primitiveReaders[primitives.get(i)];
+    }
+    return new ClassPlan(this, retainedReferenceFields, retainedReferenceReaders,
+        retainedPrimitiveFields, retainedPrimitiveKinds, retainedPrimitiveReaders);
+  }
+
+  /**
+   * Returns the (cached) plan of the specified class.
+   */
+  static ClassPlan of(Class<?> type) {
+    return plans.get(type);
+  }
+}
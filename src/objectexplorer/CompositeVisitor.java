@@ -0,0 +1,158 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link ObjectVisitor} that runs several visitors in a single traversal,
+ * by handing each visited chain to each of them, so that a whole battery of
+ * analyses of an object graph takes a single traversal.
+ *
+ * <p>Each visitor sees the traversal that it would control on its own
+ * (provided it keeps its own set of visited objects, as explained below): an
+ * object is explored if any of the visitors returns
+ * {@link ObjectVisitor.Traversal#EXPLORE EXPLORE} for it, but what is reached
+ * through it is only handed to the visitors that did. A visitor that returns
+ * {@link ObjectVisitor.Traversal#STOP STOP} is handed nothing more, and the
+ * traversal ends once all of them have stopped. (As with a single visitor,
+ * the return values for primitives and {@code null} values are ignored.)
+ *
+ * <p>The composite keeps no set of visited objects itself: each visitor has to
+ * keep its own (such as its own {@link ObjectExplorer.AtMostOncePredicate}),
+ * as it would on its own. Visitors that share one, or any other state that
+ * decides what they explore, do not see the traversal that each would see on
+ * its own: the first of them to be handed an object marks it as visited for
+ * all of them, so the others may never explore it, or explore it through
+ * another path than they would on their own.
+ *
+ * <p>The result is the list of the results of the visitors, in the order of
+ * the visitors. For example:
+ *
+ * <pre>
+ *   CompositeVisitor all = CompositeVisitor.of(bytesVisitor, histogramVisitor);
+ *   ObjectExplorer.exploreObject(root, all);
+ *   Long bytes = bytesVisitor.result();
+ * </pre>
+ *
+ * <p>This relies on the chains of the traversal of {@link ObjectExplorer},
+ * where the parent of a chain is the very chain that was visited for the
+ * parent object, so a composite visitor can only be used with that.
+ */
+public final class CompositeVisitor implements ObjectVisitor<List<Object>> {
+  /**
+   * The maximum number of visitors of a composite visitor.
+   */
+  public static final int MAX_VISITORS = 64;
+
+  private final ImmutableList<ObjectVisitor<?>> visitors;
+  private final long allVisitors;
+  private long stopped;
+
+  // the explored chains that are ancestors of the next chain, and which visitors explored them
+  private Chain[] chains = new Chain[16];
+  private long[] masks = new long[16];
+  private int depth;
+
+  private CompositeVisitor(ImmutableList<ObjectVisitor<?>> visitors) {
+    Preconditions.checkArgument(visitors.size() <= MAX_VISITORS, "More than %s visitors",
+        MAX_VISITORS);
+    this.visitors = visitors;
+    this.allVisitors = visitors.size() == 64 ? -1L : (1L << visitors.size()) - 1;
+  }
+
+  /**
+   * Creates a visitor that runs the given visitors.
+   *
+   * @throws IllegalArgumentException if there are more than
+   * {@value #MAX_VISITORS} visitors
+   */
+  public static CompositeVisitor of(ObjectVisitor<?>... visitors) {
+    return new CompositeVisitor(ImmutableList.<ObjectVisitor<?>>copyOf(visitors));
+  }
+
+  /**
+   * Creates a visitor that runs the given visitors.
+   *
+   * @throws IllegalArgumentException if there are more than
+   * {@value #MAX_VISITORS} visitors
+   */
+  public static CompositeVisitor of(Iterable<? extends ObjectVisitor<?>> visitors) {
+    return new CompositeVisitor(ImmutableList.<ObjectVisitor<?>>copyOf(visitors));
+  }
+
+  /**
+   * Returns the visitors that this visitor runs.
+   */
+  public ImmutableList<ObjectVisitor<?>> getVisitors() {
+    return visitors;
+  }
+
+  public Traversal visit(Chain chain) {
+    long active = activeVisitors(chain) & ~stopped;
+    boolean ignored = chain.isPrimitive() || chain.getValue() == null;
+    long exploring = 0;
+    for (long remaining = active; remaining != 0; remaining &= remaining - 1) {
+      int i = Long.numberOfTrailingZeros(remaining);
+      Traversal traversal = visitors.get(i).visit(chain);
+      if (ignored) continue;
+      if (traversal == Traversal.EXPLORE) {
+        exploring |= 1L << i;
+      } else if (traversal == Traversal.STOP) {
+        stopped |= 1L << i;
+      }
+    }
+    if (stopped == allVisitors) {
+      return Traversal.STOP;
+    }
+    if (exploring == 0) {
+      return Traversal.SKIP;
+    }
+    push(chain, exploring);
+    return Traversal.EXPLORE;
+  }
+
+  /**
+   * Returns the visitors that explored the parent of the given chain (all of
+   * them, for the root), forgetting the explored chains whose subtrees the
+   * traversal has left.
+   */
+  private long activeVisitors(Chain chain) {
+    if (!chain.hasParent()) {
+      Arrays.fill(chains, 0, depth, null);
+      depth = 0;
+      return allVisitors;
+    }
+    Chain parent = chain.getParent();
+    while (depth > 0 && chains[depth - 1] != parent) {
+      chains[--depth] = null;
+    }
+    Preconditions.checkState(depth > 0, "Not a chain of this traversal: %s", chain);
+    return masks[depth - 1];
+  }
+
+  private void push(Chain chain, long mask) {
+    if (depth == chains.length) {
+      chains = Arrays.copyOf(chains, depth * 2);
+      masks = Arrays.copyOf(masks, depth * 2);
+    }
+    chains[depth] = chain;
+    masks[depth++] = mask;
+  }
+
+  /**
+   * Returns the results of the visitors, in the order of the visitors (some
+   * of which may be {@code null}).
+   */
+  public List<Object> result() {
+    List<Object> results = Lists.newArrayListWithCapacity(visitors.size());
+    for (ObjectVisitor<?> visitor : visitors) {
+      results.add(visitor.result());
+    }
+    return Collections.unmodifiableList(results);
+  }
+}
@@ -0,0 +1,103 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A thread-safe variant of {@link IdentitySet}, for remembering the objects
+ * that a parallel traversal has already visited.
+ *
+ * <p>The set is partitioned (by identity hash code) into a number of
+ * {@code IdentitySet} segments, each guarded by its own lock, so that threads
+ * adding different objects rarely contend. Elements cannot be removed, and
+ * {@code null} is not permitted.
+ */
+public final class ConcurrentIdentitySet {
+  private final IdentitySet[] segments;
+  private final int shift;
+
+  /**
+   * Creates an empty set with a small initial capacity.
+   */
+  public ConcurrentIdentitySet() {
+    this(0);
+  }
+
+  /**
+   * Creates an empty set that can hold {@code expectedSize} objects without
+   * growing.
+   *
+   * @param expectedSize the number of objects that the set is expected to hold
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  public ConcurrentIdentitySet(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size");
+    int segmentCount = 1;
+    int bits = 0;
+    // enough segments for four times as many threads as processors
+    while (segmentCount < 4 * Runtime.getRuntime().availableProcessors()) {
+      segmentCount <<= 1;
+      bits++;
+    }
+    this.shift = 32 - bits;
+    this.segments = new IdentitySet[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new IdentitySet(expectedSize / segmentCount);
+    }
+  }
+
+  /**
+   * Adds an object to this set, unless it is already contained.
+   *
+   * @return {@code true} if the object was added, {@code false} if it was
+   * already contained in the set
+   */
+  public boolean add(Object o) {
+    IdentitySet segment = segmentFor(o);
+    synchronized (segment) {
+      return segment.add(o);
+    }
+  }
+
+  /**
+   * Returns whether the specified object is contained in this set.
+   */
+  public boolean contains(Object o) {
+    IdentitySet segment = segmentFor(o);
+    synchronized (segment) {
+      return segment.contains(o);
+    }
+  }
+
+  /**
+   * Returns the number of objects in this set.
+   */
+  public int size() {
+    int size = 0;
+    for (IdentitySet segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns an estimate of the memory, in bytes, that this set occupies
+   * (excluding the objects it contains).
+   */
+  public long overheadBytes() {
+    long bytes = 16 + (long) segments.length * IdentitySet.REFERENCE_SIZE;
+    for (IdentitySet segment : segments) {
+      synchronized (segment) {
+        bytes += segment.overheadBytes();
+      }
+    }
+    return bytes;
+  }
+
+  private IdentitySet segmentFor(Object o) {
+    Preconditions.checkNotNull(o);
+    if (shift == 32) return segments[0];
+    return segments[(System.identityHashCode(o) * 0x9E3779B9) >>> shift];
+  }
+}
@@ -0,0 +1,201 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+import java.lang.reflect.Field;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A reference that is being explored by an object traversal: it leads from a
+ * parent object (through either a field or an array index) to a value (either
+ * an object or a primitive), or it denotes the root object itself.
+ *
+ * <p>Edges are handed to {@link EdgeVisitor}s. To avoid allocating an object
+ * for every explored reference, the traversal reuses a single instance, so an
+ * edge is only valid for the duration of the
+ * {@link EdgeVisitor#visit(Edge)} call it is passed to. The whole path from
+ * the root can be obtained as a {@link Chain}, through {@link #toChain()}.
+ *
+ * @see EdgeVisitor
+ */
+public final class Edge {
+  private final ObjectWalker walker;
+  private Object parent;
+  private Field field;
+  private int arrayIndex;
+  private Object value;
+  private Class<?> valueType;
+  private boolean enumTyped;
+  private Chain chain;
+  private Object tag;
+
+  Edge(ObjectWalker walker) {
+    this.walker = walker;
+  }
+
+  Edge setRoot(Object root) {
+    Class<?> type = root.getClass();
+    return set(null, null, -1, root, type, Enum.class.isAssignableFrom(type));
+  }
+
+  Edge setField(Object parent, FieldReader reader, Object value) {
+    return set(parent, reader.field, -1, value, reader.field.getType(), reader.isEnumTyped);
+  }
+
+  Edge setArrayIndex(Object parent, ClassPlan arrayPlan, int index, Object value) {
+    return set(parent, null, index, value, arrayPlan.componentType, arrayPlan.isEnumArray);
+  }
+
+  private Edge set(Object parent, Field field, int arrayIndex, Object value,
+      Class<?> valueType, boolean enumTyped) {
+    this.parent = parent;
+    this.field = field;
+    this.arrayIndex = arrayIndex;
+    this.value = value;
+    this.valueType = valueType;
+    this.enumTyped = enumTyped;
+    this.chain = null;
+    this.tag = null;
+    return this;
+  }
+
+  /**
+   * Returns whether this edge has a parent. This returns false only when
+   * this edge represents the root object itself.
+   */
+  public boolean hasParent() {
+    return parent != null;
+  }
+
+  /**
+   * Returns the object that this edge starts from.
+   * @throws IllegalStateException if {@code !hasParent()}
+   */
+  public @Nonnull Object getParent() {
+    Preconditions.checkState(parent != null, "This is the root value, it has no parent");
+    return parent;
+  }
+
+  /**
+   * Returns the value that this edge leads to. If the value is a primitive,
+   * a wrapper object is returned instead.
+   */
+  public @Nullable Object getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the declared type of the value: the type of the field or the
+   * component type of the array that this edge goes through, or the class
+   * of the root object.
+   */
+  public @Nonnull Class<?> getValueType() {
+    return valueType;
+  }
+
+  /**
+   * Returns whether this edge goes through a field of its parent.
+   */
+  public boolean isThroughField() {
+    return field != null;
+  }
+
+  /**
+   * Returns whether this edge goes through an array index, i.e. the parent
+   * is an array, and the value is an element of that array.
+   */
+  public boolean isThroughArrayIndex() {
+    return arrayIndex >= 0;
+  }
+
+  /**
+   * Returns the field that this edge goes through.
+   * @throws IllegalStateException if {@code !isThroughField()}
+   */
+  public @Nonnull Field getField() {
+    Preconditions.checkState(field != null, "This edge is not through a field");
+    return field;
+  }
+
+  /**
+   * Returns the array index that this edge goes through.
+   * @throws IllegalStateException if {@code !isThroughArrayIndex()}
+   */
+  public int getArrayIndex() {
+    Preconditions.checkState(arrayIndex >= 0, "This edge is not through an array index");
+    return arrayIndex;
+  }
+
+  /**
+   * Returns whether the value of this edge represents a primitive.
+   */
+  public boolean isPrimitive() {
+    return valueType.isPrimitive();
+  }
+
+  /**
+   * Creates the chain of references that starts at the root object and ends
+   * with this edge. Unlike the edge itself, the returned chain can be retained.
+   */
+  public @Nonnull Chain toChain() {
+    if (chain == null) {
+      if (parent == null) {
+        chain = Chain.root(value);
+      } else {
+        Chain parentChain = walker.currentChain();
+        chain = field != null
+            ? parentChain.appendField(field, value)
+            : parentChain.appendArrayIndex(arrayIndex, value);
+      }
+    }
+    return chain;
+  }
+
+  /**
+   * Returns the chain that {@link #toChain()} created for this edge, or
+   * {@code null} if it has not been called.
+   */
+  @Nullable Chain createdChain() {
+    return chain;
+  }
+
+  /**
+   * Returns whether {@link #getValueType()} is an enum type. This is decided
+   * once per field (or array class), not per edge.
+   */
+  boolean isEnumTyped() {
+    return enumTyped;
+  }
+
+  /**
+   * Tags the value of this edge with an object of the visitor's choosing,
+   * which the traversal keeps while it explores the value (if it does), and
+   * hands back through {@link #getParentTag()} of the edges from it. This lets
+   * a visitor carry its own state down the traversal without a map from
+   * objects to it.
+   */
+  void setTag(@Nullable Object tag) {
+    this.tag = tag;
+  }
+
+  /**
+   * Returns the tag given to this edge through {@link #setTag(Object)}, if
+   * any.
+   */
+  @Nullable Object getTag() {
+    return tag;
+  }
+
+  /**
+   * Returns the tag that the visitor gave to the edge that led to the parent
+   * of this edge, or {@code null} if it gave none (or this edge has no
+   * parent).
+   */
+  @Nullable Object getParentTag() {
+    return parent == null ? null : walker.currentTag();
+  }
+
+  @Override public String toString() {
+    return toChain().toString();
+  }
+}
@@ -0,0 +1,45 @@
+package objectexplorer;
+
+import objectexplorer.ObjectVisitor.Traversal;
+
+/**
+ * A low-level visitor that controls an object traversal. Unlike
+ * {@link ObjectVisitor}, which is given a {@link Chain} for every explored
+ * path, an edge visitor is given an {@link Edge}: a reusable view of the
+ * explored reference (the parent object, the field or array index, and the
+ * value) which the traversal does not need to allocate. A {@code Chain} is
+ * only constructed if the visitor asks for it, through {@link Edge#toChain()}.
+ *
+ * <p>Implementations of this interface are passed to
+ * {@link ObjectExplorer#exploreObject(Object, EdgeVisitor)}.
+ *
+ * @param <T> the type of the result that this visitor returns
+ * (can be defined as {@code Void} to denote no result}.
+ * @see ObjectExplorer
+ */
+public interface EdgeVisitor<T> {
+  /**
+   * Visits an explored value, and decides whether to continue the exploration
+   * of that value.
+   *
+   * <p>The given edge is only valid for the duration of this call, and it must
+   * not be retained; use {@link Edge#toChain()} to obtain a permanent
+   * representation of it.
+   *
+   * <p>In case the explored value is either primitive or {@code null}
+   * (e.g., if {@code edge.isPrimitive() || edge.getValue() == null}),
+   * the return value is meaningless and is ignored.
+   *
+   * @param edge the edge that leads to the explored value
+   * @return {@link Traversal#EXPLORE} to denote that the visited object
+   * should be further explored, {@link Traversal#SKIP} to avoid
+   * exploring it, or {@link Traversal#STOP} to end the whole traversal.
+   */
+  Traversal visit(Edge edge);
+
+  /**
+   * Returns an arbitrary value (presumably constructed during the object
+   * graph traversal).
+   */
+  T result();
+}
@@ -0,0 +1,73 @@
+package objectexplorer;
+
+/**
+ * An estimated quantity, along with its standard error, from which a 95%
+ * confidence interval is derived (assuming the estimate is normally
+ * distributed, which holds for the large samples that estimates are made of).
+ *
+ * @see Sampling
+ */
+public final class Estimate {
+  // the 97.5th percentile of the standard normal distribution
+  private static final double Z_95 = 1.959964;
+
+  private final double value;
+  private final double standardError;
+
+  Estimate(double value, double standardError) {
+    this.value = value;
+    this.standardError = standardError;
+  }
+
+  /**
+   * Returns the estimated value.
+   */
+  public double getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the standard error of the estimate.
+   */
+  public double getStandardError() {
+    return standardError;
+  }
+
+  /**
+   * Returns the lower bound of the 95% confidence interval.
+   */
+  public double getLowerBound() {
+    return Math.max(0, value - Z_95 * standardError);
+  }
+
+  /**
+   * Returns the upper bound of the 95% confidence interval.
+   */
+  public double getUpperBound() {
+    return value + Z_95 * standardError;
+  }
+
+  /**
+   * Returns the half-width of the 95% confidence interval, relative to the
+   * estimated value (e.g. 0.02 for an estimate within 2%).
+   */
+  public double getRelativeError() {
+    return value == 0 ? 0 : Z_95 * standardError / value;
+  }
+
+  /**
+   * Returns whether the value is exact, i.e. nothing was sampled (or every
+   * sampled element had the same cost).
+   */
+  public boolean isExact() {
+    return standardError == 0;
+  }
+
+  @Override
+  public String toString() {
+    if (isExact()) {
+      return String.format("%.0f", value);
+    }
+    return String.format("%.0f \u00b1 %.0f (95%%)", value, Z_95 * standardError);
+  }
+}
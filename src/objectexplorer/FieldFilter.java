@@ -0,0 +1,157 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Decides which (non-static) fields a traversal follows. A field that a filter
+ * rejects is as if it did not exist: it is neither read nor visited, so it
+ * adds no references or primitives to a measurement, and nothing that is
+ * only reachable through it. (The shallow size of its object still includes
+ * it, though, as the field still takes space in the object.)
+ *
+ * <p>A filter decides once per field of each class: the fields that it
+ * accepts are kept in a cached {@link ClassPlan} of each class, so that
+ * filtering takes nothing per explored object.
+ *
+ * <p>Filters are created by the static factory methods (e.g.
+ * {@link #excludingTransient()}), or by subclassing and implementing
+ * {@link #accept(Field)}. Filters must be thread-safe.
+ *
+ * @see ObjectExplorer#exploreObject(Object, EdgeVisitor, java.util.EnumSet,
+ * FieldFilter)
+ * @see MemoryMeasurer#measureBytes(Object, ClassFilter, FieldFilter,
+ * com.google.common.base.Predicate)
+ */
+public abstract class FieldFilter {
+  private static final FieldFilter EXCLUDING_TRANSIENT = new FieldFilter() {
+    @Override
+    protected boolean accept(Field field) {
+      return !Modifier.isTransient(field.getModifiers());
+    }
+
+    @Override
+    public String toString() {
+      return "FieldFilter.excludingTransient()";
+    }
+  };
+
+  private final ClassValue<ClassPlan> plans = new ClassValue<ClassPlan>() {
+    @Override
+    protected ClassPlan computeValue(Class<?> type) {
+      return ClassPlan.of(type).retaining(FieldFilter.this);
+    }
+  };
+
+  /**
+   * Decides whether the given (non-static) field is to be followed. This is
+   * called (at most) once per field of each class that has it.
+   */
+  protected abstract boolean accept(Field field);
+
+  /**
+   * Returns the plan of the given class, with only the fields that this
+   * filter accepts.
+   */
+  final ClassPlan planOf(Class<?> type) {
+    return plans.get(type);
+  }
+
+  /**
+   * Returns a filter that rejects {@code transient} fields.
+   */
+  public static FieldFilter excludingTransient() {
+    return EXCLUDING_TRANSIENT;
+  }
+
+  /**
+   * Returns a filter that rejects the fields that are annotated with the given
+   * annotation (which must be retained at runtime).
+   */
+  public static FieldFilter excludingAnnotatedWith(
+      final Class<? extends Annotation> annotationType) {
+    Preconditions.checkNotNull(annotationType);
+    return new FieldFilter() {
+      @Override
+      protected boolean accept(Field field) {
+        return !field.isAnnotationPresent(annotationType);
+      }
+
+      @Override
+      public String toString() {
+        return "FieldFilter.excludingAnnotatedWith(" + annotationType.getName() + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a filter that rejects the fields that are declared with one of
+   * the given types, or with a subtype of them.
+   */
+  public static FieldFilter excludingTypes(Class<?>... types) {
+    final ImmutableList<Class<?>> excluded = ImmutableList.copyOf(types);
+    return new FieldFilter() {
+      @Override
+      protected boolean accept(Field field) {
+        for (Class<?> excludedType : excluded) {
+          if (excludedType.isAssignableFrom(field.getType())) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public String toString() {
+        return "FieldFilter.excludingTypes(" + excluded + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a filter that rejects the fields declared by the classes that the
+   * given class filter rejects.
+   */
+  public static FieldFilter excludingDeclaredIn(final ClassFilter classFilter) {
+    Preconditions.checkNotNull(classFilter);
+    return new FieldFilter() {
+      @Override
+      protected boolean accept(Field field) {
+        return classFilter.accepts(field.getDeclaringClass());
+      }
+
+      @Override
+      public String toString() {
+        return "FieldFilter.excludingDeclaredIn(" + classFilter + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a filter that accepts the fields that all the given filters
+   * accept.
+   */
+  public static FieldFilter and(FieldFilter... filters) {
+    final ImmutableList<FieldFilter> components = ImmutableList.copyOf(filters);
+    return new FieldFilter() {
+      @Override
+      protected boolean accept(Field field) {
+        for (FieldFilter filter : components) {
+          if (!filter.accept(field)) {
+            return false;
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public String toString() {
+        return "FieldFilter.and(" + components + ")";
+      }
+    };
+  }
+}
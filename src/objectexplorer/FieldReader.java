@@ -0,0 +1,355 @@
+package objectexplorer;
+
+import com.google.common.base.Throwables;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reads the value of a (non-static) field from its instances. The readers of
+ * the fields of a class are created once, along with its {@link ClassPlan}.
+ *
+ * <p>Fields are read reflectively, once made accessible. Since Java 9,
+ * fields of classes in packages that are not open to this code (such as the
+ * internals of {@code java.base}, e.g. {@code HashMap.table}) cannot be made
+ * accessible. Their packages are then opened through
+ * {@link Instrumentation#redefineModule}, if the agent is installed (see
+ * {@link InstrumentationGrabber}); otherwise, such fields are read through
+ * {@code sun.misc.Unsafe}, at their offset. The newer APIs are reached
+ * reflectively, so that this still runs on Java 7 and 8, where every field can
+ * be made accessible. So is {@code Unsafe}, an internal API that the compiler
+ * warns of when used directly, through method handles (which cost no more than
+ * direct calls once compiled).
+ */
+abstract class FieldReader {
+  // bound to the Unsafe instance; null if there is none
+  private static final @Nullable MethodHandle OBJECT_FIELD_OFFSET =
+      unsafeMethod("objectFieldOffset", long.class, Field.class);
+  private static final @Nullable MethodHandle GET_OBJECT =
+      unsafeGetter("getObject", Object.class);
+  private static final @Nullable MethodHandle GET_BOOLEAN =
+      unsafeGetter("getBoolean", boolean.class);
+  private static final @Nullable MethodHandle GET_BYTE = unsafeGetter("getByte", byte.class);
+  private static final @Nullable MethodHandle GET_CHAR = unsafeGetter("getChar", char.class);
+  private static final @Nullable MethodHandle GET_SHORT = unsafeGetter("getShort", short.class);
+  private static final @Nullable MethodHandle GET_INT = unsafeGetter("getInt", int.class);
+  private static final @Nullable MethodHandle GET_FLOAT = unsafeGetter("getFloat", float.class);
+  private static final @Nullable MethodHandle GET_LONG = unsafeGetter("getLong", long.class);
+  private static final @Nullable MethodHandle GET_DOUBLE = unsafeGetter("getDouble", double.class);
+
+  final Field field;
+
+  /**
+   * Whether the declared type of {@link #field} is an enum type, whose values
+   * are shared constants (decided once, along with the reader).
+   */
+  final boolean isEnumTyped;
+
+  private FieldReader(Field field) {
+    this.field = field;
+    this.isEnumTyped = Enum.class.isAssignableFrom(field.getType());
+  }
+
+  /**
+   * Returns the value of the field in the given object (primitives are
+   * wrapped).
+   */
+  abstract Object get(Object owner);
+
+  abstract boolean getBoolean(Object owner);
+
+  abstract byte getByte(Object owner);
+
+  abstract char getChar(Object owner);
+
+  abstract short getShort(Object owner);
+
+  abstract int getInt(Object owner);
+
+  abstract float getFloat(Object owner);
+
+  abstract long getLong(Object owner);
+
+  abstract double getDouble(Object owner);
+
+  /**
+   * Creates the readers of the given fields, opening their packages, or
+   * falling back to {@code Unsafe}, where needed.
+   *
+   * @throws RuntimeException (normally an {@code InaccessibleObjectException})
+   * if some field can be read neither way
+   */
+  static FieldReader[] of(Field[] fields) {
+    FieldReader[] readers = new FieldReader[fields.length];
+    try {
+      // all together so there is only one security check, in the common case
+      AccessibleObject.setAccessible(fields, true);
+      for (int i = 0; i < fields.length; i++) {
+        readers[i] = new Reflective(fields[i]);
+      }
+    } catch (RuntimeException e) {
+      for (int i = 0; i < fields.length; i++) {
+        readers[i] = of(fields[i]);
+      }
+    }
+    return readers;
+  }
+
+  private static FieldReader of(Field field) {
+    try {
+      field.setAccessible(true);
+      return new Reflective(field);
+    } catch (RuntimeException inaccessible) {
+      if (openPackage(field.getDeclaringClass())) {
+        field.setAccessible(true);
+        return new Reflective(field);
+      }
+      if (OBJECT_FIELD_OFFSET != null) {
+        try {
+          return new UnsafeBased(field, (long) OBJECT_FIELD_OFFSET.invokeExact(field));
+        } catch (Throwable e) {
+          // e.g. a field of a hidden class, or of a record
+        }
+      }
+      throw inaccessible;
+    }
+  }
+
+  /**
+   * Opens the package of the given class to this code, through the
+   * instrumentation of the agent (if installed).
+   *
+   * @return whether the package was opened
+   */
+  private static boolean openPackage(Class<?> type) {
+    Instrumentation instrumentation = InstrumentationGrabber.instrumentationIfAvailable();
+    if (instrumentation == null) {
+      return false;
+    }
+    try {
+      Method getModule = Class.class.getMethod("getModule");
+      Class<?> moduleClass = getModule.getReturnType();
+      Object module = getModule.invoke(type);
+      Object thisModule = getModule.invoke(FieldReader.class);
+      String name = type.getName();
+      String packageName = name.substring(0, Math.max(0, name.lastIndexOf('.')));
+      Map<String, Set<Object>> extraOpens =
+          Collections.singletonMap(packageName, Collections.singleton(thisModule));
+      Instrumentation.class.getMethod("redefineModule", moduleClass, Set.class, Map.class,
+          Map.class, Set.class, Map.class).invoke(instrumentation, module,
+          Collections.emptySet(), Collections.emptyMap(), extraOpens,
+          Collections.emptySet(), Collections.emptyMap());
+      return true;
+    } catch (Exception e) {
+      // e.g. an unmodifiable module, or a VM without modules
+      return false;
+    }
+  }
+
+  /**
+   * Returns a handle of the method of {@code sun.misc.Unsafe} with the given
+   * name and type, bound to its instance, or {@code null} if there is none.
+   */
+  private static @Nullable MethodHandle unsafeMethod(String name, Class<?> returnType,
+      Class<?>... parameterTypes) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return MethodHandles.lookup().findVirtual(unsafeClass, name,
+          MethodType.methodType(returnType, parameterTypes)).bindTo(theUnsafe.get(null));
+    } catch (Exception e) {
+      return null;
+    } catch (LinkageError e) {
+      return null;
+    }
+  }
+
+  private static @Nullable MethodHandle unsafeGetter(String name, Class<?> type) {
+    return unsafeMethod(name, type, Object.class, long.class);
+  }
+
+  private static final class Reflective extends FieldReader {
+    Reflective(Field field) {
+      super(field);
+    }
+
+    Object get(Object owner) {
+      try {
+        return field.get(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    boolean getBoolean(Object owner) {
+      try {
+        return field.getBoolean(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    byte getByte(Object owner) {
+      try {
+        return field.getByte(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    char getChar(Object owner) {
+      try {
+        return field.getChar(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    short getShort(Object owner) {
+      try {
+        return field.getShort(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    int getInt(Object owner) {
+      try {
+        return field.getInt(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    float getFloat(Object owner) {
+      try {
+        return field.getFloat(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    long getLong(Object owner) {
+      try {
+        return field.getLong(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    double getDouble(Object owner) {
+      try {
+        return field.getDouble(owner);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  private static final class UnsafeBased extends FieldReader {
+    private final long offset;
+    private final PrimitiveKind kind;
+
+    UnsafeBased(Field field, long offset) {
+      super(field);
+      this.offset = offset;
+      this.kind = field.getType().isPrimitive() ? PrimitiveKind.of(field.getType()) : null;
+    }
+
+    Object get(Object owner) {
+      if (kind == null) {
+        try {
+          return (Object) GET_OBJECT.invokeExact(owner, offset);
+        } catch (Throwable e) {
+          throw Throwables.propagate(e);
+        }
+      }
+      switch (kind) {
+        case BOOLEAN: return getBoolean(owner);
+        case BYTE: return getByte(owner);
+        case CHAR: return getChar(owner);
+        case SHORT: return getShort(owner);
+        case INT: return getInt(owner);
+        case FLOAT: return getFloat(owner);
+        case LONG: return getLong(owner);
+        case DOUBLE: return getDouble(owner);
+        default: throw new AssertionError(kind);
+      }
+    }
+
+    boolean getBoolean(Object owner) {
+      try {
+        return (boolean) GET_BOOLEAN.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    byte getByte(Object owner) {
+      try {
+        return (byte) GET_BYTE.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    char getChar(Object owner) {
+      try {
+        return (char) GET_CHAR.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    short getShort(Object owner) {
+      try {
+        return (short) GET_SHORT.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    int getInt(Object owner) {
+      try {
+        return (int) GET_INT.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    float getFloat(Object owner) {
+      try {
+        return (float) GET_FLOAT.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    long getLong(Object owner) {
+      try {
+        return (long) GET_LONG.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    double getDouble(Object owner) {
+      try {
+        return (double) GET_DOUBLE.invokeExact(owner, offset);
+      } catch (Throwable e) {
+        throw Throwables.propagate(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,465 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps measuring the memory footprint of a few long-lived object graphs (such
+ * as caches), in the background, and publishes the latest measurements as
+ * JMX MBeans.
+ *
+ * <p>Roots are registered under names, and are only held weakly: a root that
+ * is garbage collected is unregistered. A daemon thread measures the roots
+ * periodically, with {@link MemoryMeasurer#measureAll} (bytes, objects and
+ * references, in a single traversal). Each measurement cycle is given a
+ * budget of CPU time: the roots are measured least recently measured first,
+ * until the budget runs out, and the rest are left to the next cycle. A
+ * measurement whose traversal runs out of the remaining budget is abandoned,
+ * and the previous measurement of its root stays published; a root that is
+ * too large for a whole cycle is thus never measured, which its count of
+ * {@linkplain RootMXBean#getTruncations() truncations} shows.
+ *
+ * <p>Each root is published, in the platform MBean server, as an
+ * {@link RootMXBean} named
+ * {@code objectexplorer:type=FootprintMonitor,root=<quoted name>}.
+ *
+ * <p>A monitor is thread-safe; roots may be registered and unregistered at
+ * any time. Its measurements are not synchronized with the code that
+ * modifies the roots, so they are only accurate for graphs that do not change
+ * while being measured (for others, they are an approximation).
+ */
+public final class FootprintMonitor implements Closeable {
+  private static final String OBJECT_NAME_PREFIX = "objectexplorer:type=FootprintMonitor,root=";
+
+  private final long cycleCpuBudgetNanos;
+  private final ScheduledExecutorService executor;
+  private final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+  private final ConcurrentMap<String, MonitoredRoot> roots =
+      new ConcurrentHashMap<String, MonitoredRoot>();
+  private long cycles;
+
+  private FootprintMonitor(long period, long cycleCpuBudget, TimeUnit unit) {
+    this.cycleCpuBudgetNanos = unit.toNanos(cycleCpuBudget);
+    this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "FootprintMonitor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        runCycle();
+      }
+    }, period, period, unit);
+  }
+
+  /**
+   * Starts a monitor that measures its roots every {@code period}, with a
+   * tenth of the period as the CPU time budget of each cycle.
+   *
+   * <p>Equivalent to {@code start(period, period / 10, unit)}.
+   */
+  public static FootprintMonitor start(long period, TimeUnit unit) {
+    return start(period, Math.max(1, period / 10), unit);
+  }
+
+  /**
+   * Starts a monitor that measures its roots every {@code period} (from the
+   * end of a cycle to the start of the next), and spends at most (about)
+   * {@code cycleCpuBudget} of CPU time in each cycle. Where the VM does not
+   * support measuring the CPU time of threads, elapsed time is used instead.
+   *
+   * @param period the delay between two measurement cycles
+   * @param cycleCpuBudget the CPU time that a measurement cycle may take
+   * @param unit the unit of {@code period} and {@code cycleCpuBudget}
+   */
+  public static FootprintMonitor start(long period, long cycleCpuBudget, TimeUnit unit) {
+    Preconditions.checkArgument(period > 0, "Non-positive period");
+    Preconditions.checkArgument(cycleCpuBudget > 0, "Non-positive cycle CPU budget");
+    Preconditions.checkNotNull(unit, "unit");
+    return new FootprintMonitor(period, cycleCpuBudget, unit);
+  }
+
+  /**
+   * Registers a root to be monitored.
+   *
+   * <p>Equivalent to {@code register(name, rootObject, Predicates.alwaysTrue())}.
+   */
+  public void register(String name, Object rootObject) {
+    register(name, rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Registers a root to be monitored, and publishes its MBean (whose
+   * measurements stay zero until the root is first measured). The object
+   * graph of the root is defined as in
+   * {@link MemoryMeasurer#measureBytes(Object, Predicate)}.
+   *
+   * @param name the name of the root, which must be unique among the roots
+   * of all monitors of this VM
+   * @param rootObject the root object, which is only held weakly
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @throws IllegalStateException if a root with the same name is registered
+   * already
+   */
+  public void register(String name, Object rootObject, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(name, "name");
+    Preconditions.checkNotNull(rootObject, "rootObject");
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkState(!executor.isShutdown(), "The monitor is closed");
+
+    MonitoredRoot root = new MonitoredRoot(name, rootObject, objectAcceptor);
+    try {
+      mbeanServer.registerMBean(root, root.objectName);
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register root " + name, e);
+    }
+    roots.put(name, root);
+  }
+
+  /**
+   * Stops monitoring the root with the given name, and removes its MBean.
+   *
+   * @return whether a root with that name was registered
+   */
+  public boolean unregister(String name) {
+    MonitoredRoot root = roots.get(name);
+    return root != null && unregister(root);
+  }
+
+  private boolean unregister(MonitoredRoot root) {
+    if (!roots.remove(root.name, root)) {
+      return false;
+    }
+    try {
+      mbeanServer.unregisterMBean(root.objectName);
+    } catch (JMException e) {
+      // unregistered from the server already, by someone else
+    }
+    return true;
+  }
+
+  /**
+   * Returns the latest measurement of the root with the given name, or
+   * {@code null} if there is no such root, or it has not been measured yet.
+   */
+  public @Nullable RootStats getStats(String name) {
+    MonitoredRoot root = roots.get(name);
+    return root == null ? null : root.stats;
+  }
+
+  /**
+   * Returns the latest measurement of each root that has been measured, by
+   * name.
+   */
+  public ImmutableMap<String, RootStats> getStats() {
+    ImmutableMap.Builder<String, RootStats> stats = ImmutableMap.builder();
+    for (MonitoredRoot root : roots.values()) {
+      if (root.stats != null) {
+        stats.put(root.name, root.stats);
+      }
+    }
+    return stats.build();
+  }
+
+  /**
+   * Stops the monitor, and unregisters all roots (and their MBeans). A
+   * measurement that is in progress is finished first.
+   */
+  public void close() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (MonitoredRoot root : roots.values()) {
+      unregister(root);
+    }
+  }
+
+  private void runCycle() {
+    long cycle = ++cycles;
+    long cycleStart = cpuTime();
+    List<MonitoredRoot> pending = Lists.newArrayList(roots.values());
+    Collections.sort(pending, leastRecentlyMeasuredFirst);
+    for (MonitoredRoot root : pending) {
+      Object rootObject = root.reference.get();
+      if (rootObject == null) {
+        unregister(root);
+        continue;
+      }
+      long remaining = cycleCpuBudgetNanos - (cpuTime() - cycleStart);
+      if (remaining <= 0 || !measure(root, rootObject, remaining, cycle)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Measures a root, unless that takes more than the given time.
+   *
+   * @return whether the root was measured
+   */
+  private boolean measure(MonitoredRoot root, Object rootObject, long budgetNanos, long cycle) {
+    root.lastCycle = cycle;
+    long wallStart = System.nanoTime();
+    long cpuStart = cpuTime();
+    try {
+      // CPU time never exceeds elapsed time, so the timeout bounds the CPU time too
+      GraphMeasurement measurement = MemoryMeasurer.measureAll(rootObject, root.objectAcceptor,
+          TraversalBudget.unlimited().withTimeout(budgetNanos, TimeUnit.NANOSECONDS));
+      if (measurement.isTruncated()) {
+        root.truncations++;
+        return false;
+      }
+      root.stats = new RootStats(System.currentTimeMillis(), measurement.getBytes(),
+          measurement.getObjects(), measurement.getReferences(),
+          System.nanoTime() - wallStart, cpuTime() - cpuStart);
+      root.lastError = null;
+      return true;
+    } catch (RuntimeException | AssertionError e) {
+      // an AssertionError is thrown for a field that cannot be read; other errors (such as
+      // an OutOfMemoryError) are not the root's, and are left to propagate
+      root.lastError = Throwables.getStackTraceAsString(e);
+    }
+    return true;
+  }
+
+  private long cpuTime() {
+    return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+  }
+
+  private static final Comparator<MonitoredRoot> leastRecentlyMeasuredFirst =
+      new Comparator<MonitoredRoot>() {
+    public int compare(MonitoredRoot a, MonitoredRoot b) {
+      return a.lastCycle < b.lastCycle ? -1 : (a.lastCycle == b.lastCycle ? 0 : 1);
+    }
+  };
+
+  /**
+   * The JMX view of a monitored root. Its attributes are those of the latest
+   * measurement of the root (or zero, if it has not been measured yet).
+   */
+  public interface RootMXBean {
+    /**
+     * Returns the name of the root.
+     */
+    String getName();
+
+    /**
+     * Returns the memory footprint, in bytes, of the object graph.
+     */
+    long getBytes();
+
+    /**
+     * Returns the number of objects of the object graph.
+     */
+    long getObjects();
+
+    /**
+     * Returns the number of references of the object graph.
+     */
+    long getReferences();
+
+    /**
+     * Returns the time when the root was measured, in milliseconds since the
+     * epoch.
+     */
+    long getTimeMillis();
+
+    /**
+     * Returns how long the measurement took, in milliseconds.
+     */
+    double getDurationMillis();
+
+    /**
+     * Returns how much CPU time the measurement took, in milliseconds.
+     */
+    double getCpuMillis();
+
+    /**
+     * Returns how many measurements of the root were abandoned, because they
+     * would exceed the budget of their cycle.
+     */
+    long getTruncations();
+
+    /**
+     * Returns the stack trace of the failure of the latest measurement, or
+     * {@code null} if it succeeded.
+     */
+    @Nullable String getLastError();
+  }
+
+  /**
+   * A measurement of a monitored root.
+   */
+  public static final class RootStats {
+    private final long timeMillis;
+    private final long bytes;
+    private final long objects;
+    private final long references;
+    private final long durationNanos;
+    private final long cpuNanos;
+
+    RootStats(long timeMillis, long bytes, long objects, long references, long durationNanos,
+        long cpuNanos) {
+      this.timeMillis = timeMillis;
+      this.bytes = bytes;
+      this.objects = objects;
+      this.references = references;
+      this.durationNanos = durationNanos;
+      this.cpuNanos = cpuNanos;
+    }
+
+    /**
+     * Returns the time when the root was measured, in milliseconds since the
+     * epoch.
+     */
+    public long getTimeMillis() {
+      return timeMillis;
+    }
+
+    /**
+     * Returns the memory footprint, in bytes, of the object graph.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the number of objects of the object graph.
+     */
+    public long getObjects() {
+      return objects;
+    }
+
+    /**
+     * Returns the number of references of the object graph.
+     */
+    public long getReferences() {
+      return references;
+    }
+
+    /**
+     * Returns how long the measurement took, in nanoseconds.
+     */
+    public long getDurationNanos() {
+      return durationNanos;
+    }
+
+    /**
+     * Returns how much CPU time the measurement took, in nanoseconds.
+     */
+    public long getCpuNanos() {
+      return cpuNanos;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("TimeMillis", timeMillis)
+      .add("Bytes", bytes)
+      .add("Objects", objects)
+      .add("References", references)
+      .add("DurationNanos", durationNanos)
+      .add("CpuNanos", cpuNanos)
+      .toString();
+    }
+  }
+
+  private static final class MonitoredRoot implements RootMXBean {
+    final String name;
+    final ObjectName objectName;
+    final WeakReference<Object> reference;
+    final Predicate<Object> objectAcceptor;
+
+    // only written by the monitor thread
+    long lastCycle;
+    volatile long truncations;
+    volatile RootStats stats;
+    volatile String lastError;
+
+    MonitoredRoot(String name, Object rootObject, Predicate<Object> objectAcceptor) {
+      this.name = name;
+      this.reference = new WeakReference<Object>(rootObject);
+      this.objectAcceptor = objectAcceptor;
+      try {
+        this.objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+      } catch (JMException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getBytes() {
+      RootStats s = stats;
+      return s == null ? 0 : s.bytes;
+    }
+
+    public long getObjects() {
+      RootStats s = stats;
+      return s == null ? 0 : s.objects;
+    }
+
+    public long getReferences() {
+      RootStats s = stats;
+      return s == null ? 0 : s.references;
+    }
+
+    public long getTimeMillis() {
+      RootStats s = stats;
+      return s == null ? 0 : s.timeMillis;
+    }
+
+    public double getDurationMillis() {
+      RootStats s = stats;
+      return s == null ? 0 : s.durationNanos / 1e6;
+    }
+
+    public double getCpuMillis() {
+      RootStats s = stats;
+      return s == null ? 0 : s.cpuNanos / 1e6;
+    }
+
+    public long getTruncations() {
+      return truncations;
+    }
+
+    public String getLastError() {
+      return lastError;
+    }
+  }
+}
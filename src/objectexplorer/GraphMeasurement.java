@@ -0,0 +1,115 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMultiset;
+
+import javax.annotation.Nullable;
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+/**
+ * Both measurements of an object graph, its memory footprint in bytes and its
+ * {@link Footprint}, as taken by a single traversal.
+ *
+ * @see MemoryMeasurer#measureAll(Object, com.google.common.base.Predicate)
+ */
+public final class GraphMeasurement {
+  private final long bytes;
+  private final long nulls;
+  private final Footprint footprint;
+  private final @Nullable TraversalBudget.Exhaustion exhaustion;
+
+  GraphMeasurement(long bytes, long nulls, Footprint footprint,
+      @Nullable TraversalBudget.Exhaustion exhaustion) {
+    this.bytes = bytes;
+    this.nulls = nulls;
+    this.footprint = footprint;
+    this.exhaustion = exhaustion;
+  }
+
+  /**
+   * Returns the memory footprint, in bytes, of the object graph, as
+   * {@link MemoryMeasurer#measureBytes(Object,
+   * com.google.common.base.Predicate)} measures it.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of objects of the object graph.
+   */
+  public long getObjects() {
+    return footprint.getObjects();
+  }
+
+  /**
+   * Returns the number of references of the object graph, {@code null} ones
+   * included.
+   */
+  public long getReferences() {
+    return footprint.getReferences();
+  }
+
+  /**
+   * Returns the number of {@code null} references of the object graph.
+   */
+  public long getNulls() {
+    return nulls;
+  }
+
+  /**
+   * Returns the number of primitives of the given type (e.g.
+   * {@code int.class}) of the object graph.
+   *
+   * @throws IllegalArgumentException if {@code primitiveType} is not a
+   * primitive type
+   */
+  public long getPrimitiveCount(Class<?> primitiveType) {
+    return footprint.getPrimitiveCount(primitiveType);
+  }
+
+  /**
+   * Returns the number of primitives of the object graph, as
+   * {@link Footprint#getPrimitives()} does.
+   */
+  public ImmutableMultiset<Class<?>> getPrimitives() {
+    return footprint.getPrimitives();
+  }
+
+  /**
+   * Returns the footprint of the object graph, as
+   * {@link ObjectGraphMeasurer#measure(Object, com.google.common.base.Predicate)}
+   * measures it.
+   */
+  public Footprint getFootprint() {
+    return footprint;
+  }
+
+  /**
+   * Returns whether the measurement ran out of budget, in which case the
+   * object graph may be larger than was measured.
+   */
+  public boolean isTruncated() {
+    return exhaustion != null;
+  }
+
+  /**
+   * Returns the bound of the budget that ended the measurement, or
+   * {@code null} if the whole object graph was measured.
+   */
+  public @Nullable TraversalBudget.Exhaustion getExhaustion() {
+    return exhaustion;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("Bytes", bytes)
+    .add("Objects", footprint.getObjects())
+    .add("References", footprint.getReferences())
+    .add("Nulls", nulls)
+    .add("Primitives", footprint.getPrimitives())
+    .add("Truncated", exhaustion != null)
+    .toString();
+  }
+}
@@ -0,0 +1,736 @@
+package objectexplorer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+/**
+ * A heap dump in the HPROF format (as written by {@code jmap -dump}, by
+ * {@code HotSpotDiagnosticMXBean.dumpHeap}, or on an
+ * {@code OutOfMemoryError}), read into a compact object graph, so that object
+ * graphs can be measured offline, the way {@link MemoryMeasurer} and
+ * {@link ObjectGraphMeasurer} measure them in a running VM, but without any
+ * cost to the VM that was dumped. For example:
+ *
+ * <pre>
+ *   HprofHeap heap = HprofHeap.load(new File("service.hprof"));
+ *   long cache = heap.getStaticField("com.example.Service", "cache");
+ *   long bytes = heap.measureBytes(cache);
+ *   Footprint footprint = heap.measure(cache);
+ *   ClassHistogram histogram = heap.measureHistogram(cache);
+ * </pre>
+ *
+ * <p>The dump is read, in two sequential passes, through memory mappings of
+ * the file, and only its structure is kept: each object gets a number, and its
+ * class, its array length and its (non-null) references are kept in int
+ * arrays, indexed by that number, whatever the size of its primitive contents.
+ * That takes some 30 to 50 bytes per object, plus 4 per reference, so dumps
+ * that are larger than the heap of the analyzing VM can be measured.
+ *
+ * <p>A heap dump does not tell how the dumped VM laid out its objects, so
+ * sizes are computed by an {@link ObjectLayout} of that VM. By default, it is
+ * that of a 32-bit HotSpot VM for dumps with 4-byte ids, and that of a 64-bit
+ * HotSpot VM with compressed references (the default for heaps smaller than
+ * 32GB) for dumps with 8-byte ids; the layout can also be given explicitly.
+ *
+ * <p>As in a running VM, an object graph consists of what can be reached from
+ * its root, excluding static fields, {@code Class} objects and enum constants.
+ * Since a heap dump does not record the declared types of fields, all
+ * references to enum constants are excluded, rather than only those of fields
+ * declared with an enum type.
+ */
+public final class HprofHeap {
+  // record tags
+  private static final int UTF8 = 0x01;
+  private static final int LOAD_CLASS = 0x02;
+  private static final int HEAP_DUMP = 0x0C;
+  private static final int HEAP_DUMP_SEGMENT = 0x1C;
+
+  // heap dump sub-record tags
+  private static final int ROOT_UNKNOWN = 0xFF;
+  private static final int ROOT_JNI_GLOBAL = 0x01;
+  private static final int ROOT_JNI_LOCAL = 0x02;
+  private static final int ROOT_JAVA_FRAME = 0x03;
+  private static final int ROOT_NATIVE_STACK = 0x04;
+  private static final int ROOT_STICKY_CLASS = 0x05;
+  private static final int ROOT_THREAD_BLOCK = 0x06;
+  private static final int ROOT_MONITOR_USED = 0x07;
+  private static final int ROOT_THREAD_OBJECT = 0x08;
+  private static final int CLASS_DUMP = 0x20;
+  private static final int INSTANCE_DUMP = 0x21;
+  private static final int OBJECT_ARRAY_DUMP = 0x22;
+  private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+
+  // the basic type of references; the others are primitive
+  private static final int OBJECT = 2;
+
+  // indexed by basic type: the primitive kinds, their sizes in the dump, and their descriptors
+  private static final PrimitiveKind[] kinds = new PrimitiveKind[12];
+  private static final int[] valueSizes = new int[12];
+  private static final String descriptors = "????ZCFDBSIJ";
+
+  static {
+    kinds[4] = PrimitiveKind.BOOLEAN;
+    kinds[5] = PrimitiveKind.CHAR;
+    kinds[6] = PrimitiveKind.FLOAT;
+    kinds[7] = PrimitiveKind.DOUBLE;
+    kinds[8] = PrimitiveKind.BYTE;
+    kinds[9] = PrimitiveKind.SHORT;
+    kinds[10] = PrimitiveKind.INT;
+    kinds[11] = PrimitiveKind.LONG;
+    int[] sizes = { 0, 0, 0, 0, 1, 2, 4, 8, 1, 2, 4, 8 };
+    System.arraycopy(sizes, 0, valueSizes, 0, sizes.length);
+  }
+
+  private final ObjectLayout layout;
+  private final ImmutableList<ClassInfo> classes;
+  private final LongIntMap objectNumbers;
+
+  // indexed by object number
+  private final int[] classOf;
+  private final int[] lengths;
+  private final int[] firstReference;
+
+  // the (non-null) references of each object, in order of object number
+  private final int[] references;
+
+  private HprofHeap(ObjectLayout layout, ImmutableList<ClassInfo> classes,
+      LongIntMap objectNumbers, int[] classOf, int[] lengths, int[] firstReference,
+      int[] references) {
+    this.layout = layout;
+    this.classes = classes;
+    this.objectNumbers = objectNumbers;
+    this.classOf = classOf;
+    this.lengths = lengths;
+    this.firstReference = firstReference;
+    this.references = references;
+  }
+
+  /**
+   * Reads the given heap dump, assuming the default layout of the dumped VM.
+   *
+   * @throws IOException if the file cannot be read, or is not a heap dump in
+   * the HPROF format
+   */
+  public static HprofHeap load(File file) throws IOException {
+    return load(file, null, MappedInput.DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Reads the given heap dump, of a VM that lays out its objects as the given
+   * {@code ObjectLayout} describes.
+   *
+   * @throws IOException if the file cannot be read, or is not a heap dump in
+   * the HPROF format
+   */
+  public static HprofHeap load(File file, ObjectLayout layout) throws IOException {
+    return load(file, Preconditions.checkNotNull(layout), MappedInput.DEFAULT_WINDOW_SIZE);
+  }
+
+  static HprofHeap load(File file, @Nullable ObjectLayout layout, int windowSize)
+      throws IOException {
+    MappedInput in = new MappedInput(file, windowSize);
+    try {
+      return new Reader(in, layout).read();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the object layout that sizes the objects of this heap.
+   */
+  public ObjectLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Returns the number of objects in the heap dump ({@code Class} objects
+   * excluded).
+   */
+  public int getObjectCount() {
+    return classOf.length;
+  }
+
+  /**
+   * Returns the id of the object that a static field refers to, or zero if it
+   * is {@code null}. The field is searched in the class of the given name and
+   * its superclasses; if several loaded classes have that name, the first one
+   * in the dump is searched.
+   *
+   * @param className the name of the class, as given by
+   * {@link Class#getName()}
+   * @param fieldName the name of a static field, of a reference type
+   * @throws IllegalArgumentException if there is no such class or field
+   */
+  public long getStaticField(String className, String fieldName) {
+    for (ClassInfo type : classes) {
+      if (type.name.equals(className)) {
+        for (ClassInfo c = type; c != null; c = c.superclass) {
+          for (int i = 0; i < c.staticNames.length; i++) {
+            if (c.staticNames[i].equals(fieldName)) {
+              return c.staticValues[i];
+            }
+          }
+        }
+        throw new IllegalArgumentException(
+            "No static reference field " + fieldName + " in " + className);
+      }
+    }
+    throw new IllegalArgumentException("No class " + className + " in the heap dump");
+  }
+
+  /**
+   * Returns the name of the class of the given object, as given by
+   * {@link Class#getName()}.
+   *
+   * @throws IllegalArgumentException if there is no object of that id in
+   * the heap dump
+   */
+  public String getClassName(long objectId) {
+    return classes.get(classOf[numberOf(objectId)]).name;
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of the object graph of the given
+   * root, like {@link MemoryMeasurer#measureBytes(Object)} does in a running
+   * VM.
+   *
+   * @param rootId the id of the root object (e.g. as returned by
+   * {@link #getStaticField})
+   * @throws IllegalArgumentException if there is no object of that id in
+   * the heap dump
+   */
+  public long measureBytes(long rootId) {
+    final long[] bytes = new long[1];
+    explore(rootId, new ObjectCounter() {
+      void count(int object) {
+        bytes[0] += sizeOf(object);
+      }
+    });
+    return bytes[0];
+  }
+
+  /**
+   * Measures the footprint of the object graph of the given root, like
+   * {@link ObjectGraphMeasurer#measure(Object)} does in a running VM.
+   *
+   * @param rootId the id of the root object (e.g. as returned by
+   * {@link #getStaticField})
+   * @throws IllegalArgumentException if there is no object of that id in
+   * the heap dump
+   */
+  public Footprint measure(long rootId) {
+    // the objects, the references, and the primitives of each kind
+    final long[] counts = new long[2 + PrimitiveKind.values().length];
+    explore(rootId, new ObjectCounter() {
+      void count(int object) {
+        ClassInfo type = classes.get(classOf[object]);
+        counts[0]++;
+        if (!type.isArray) {
+          counts[1] += type.referenceSlots;
+          for (int k = 0; k < type.primitives.length; k++) {
+            counts[2 + k] += type.primitives[k];
+          }
+        } else if (type.elementKind == null) {
+          counts[1] += lengths[object];
+        } else {
+          counts[2 + type.elementKind.ordinal()] += lengths[object];
+        }
+      }
+    });
+    return new Footprint(counts[0], counts[1], Arrays.copyOfRange(counts, 2, counts.length));
+  }
+
+  /**
+   * Measures the object graph of the given root, broken down by class, like
+   * {@link MemoryMeasurer#measureHistogram(Object)} does in a running VM.
+   * The entries of the histogram only have {@linkplain
+   * ClassHistogram.Entry#getTypeName() type names}.
+   *
+   * @param rootId the id of the root object (e.g. as returned by
+   * {@link #getStaticField})
+   * @throws IllegalArgumentException if there is no object of that id in
+   * the heap dump
+   */
+  public ClassHistogram measureHistogram(long rootId) {
+    final long[] instances = new long[classes.size()];
+    final long[] bytes = new long[classes.size()];
+    final long[] arrayElements = new long[classes.size()];
+    explore(rootId, new ObjectCounter() {
+      void count(int object) {
+        int k = classOf[object];
+        instances[k]++;
+        bytes[k] += sizeOf(object);
+        if (lengths[object] >= 0) {
+          arrayElements[k] += lengths[object];
+        }
+      }
+    });
+    List<ClassHistogram.Entry> entries = Lists.newArrayList();
+    for (int k = 0; k < instances.length; k++) {
+      if (instances[k] > 0) {
+        entries.add(new ClassHistogram.Entry(null, classes.get(k).name, instances[k], bytes[k],
+            arrayElements[k]));
+      }
+    }
+    return ClassHistogram.of(entries);
+  }
+
+  private abstract static class ObjectCounter {
+    abstract void count(int object);
+  }
+
+  /**
+   * Explores the object graph of the given root, depth-first, and counts each
+   * of its objects once.
+   */
+  private void explore(long rootId, ObjectCounter counter) {
+    int root = numberOf(rootId);
+    BitSet visited = new BitSet(classOf.length);
+    int[] stack = new int[64];
+    int size = 0;
+    visited.set(root);
+    stack[size++] = root;
+    while (size > 0) {
+      int object = stack[--size];
+      counter.count(object);
+      for (int i = firstReference[object], end = firstReference[object + 1]; i < end; i++) {
+        int target = references[i];
+        if (!visited.get(target)) {
+          visited.set(target);
+          if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+          }
+          stack[size++] = target;
+        }
+      }
+    }
+  }
+
+  private int numberOf(long objectId) {
+    int number = objectNumbers.get(objectId);
+    Preconditions.checkArgument(number >= 0, "No object of id 0x%s in the heap dump",
+        Long.toHexString(objectId));
+    return number;
+  }
+
+  private long sizeOf(int object) {
+    ClassInfo type = classes.get(classOf[object]);
+    if (!type.isArray) {
+      return type.layout.instanceSize;
+    }
+    return layout.arraySize(type.elementKind == null ? Object.class : type.elementKind.type,
+        lengths[object]);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("Objects", classOf.length)
+    .add("References", references.length)
+    .add("Classes", classes.size())
+    .add("Layout", layout)
+    .toString();
+  }
+
+  /**
+   * A class of the heap dump, along with what is derived from its fields.
+   */
+  private static final class ClassInfo {
+    final long id;
+    String name;
+    boolean isArray;
+    @Nullable PrimitiveKind elementKind;
+
+    // as read from the class dump
+    long superclassId;
+    byte[] fieldTypes = new byte[0];
+    long[] staticNameIds = new long[0];
+    long[] staticValues = new long[0];
+
+    // derived once all classes are read
+    @Nullable ClassInfo superclass;
+    String[] staticNames;
+    boolean isEnum;
+    ObjectLayout.ClassLayout layout;
+    // the types of the fields of an instance, in the order of the dump: own fields first
+    byte[] instanceFieldTypes;
+    int instanceFieldBytes;
+    int referenceSlots;
+    final int[] primitives = new int[PrimitiveKind.values().length];
+
+    ClassInfo(long id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * Reads a heap dump, in two passes: the first numbers the objects and reads
+   * the classes, and the second, once every object has a number, records the
+   * references.
+   */
+  private static final class Reader {
+    private final MappedInput in;
+    private @Nullable ObjectLayout layout;
+    private int idSize;
+
+    private final Map<Long, String> strings = Maps.newHashMap();
+    private final Map<Long, Long> classNameIds = Maps.newHashMap();
+    private final List<ClassInfo> classes = Lists.newArrayList();
+    private final LongIntMap classNumbers = new LongIntMap();
+    private final int[] primitiveArrayClasses = new int[12];
+    private final List<long[]> heapDumps = Lists.newArrayList();
+
+    private final LongIntMap objectNumbers = new LongIntMap();
+    private final IntList classOfList = new IntList();
+    private final IntList lengthsList = new IntList();
+
+    // of the second pass
+    private int[] classOf;
+    private int[] firstReference;
+    private final IntList references = new IntList();
+    private int object;
+
+    Reader(MappedInput in, @Nullable ObjectLayout layout) {
+      this.in = in;
+      this.layout = layout;
+      Arrays.fill(primitiveArrayClasses, -1);
+    }
+
+    HprofHeap read() throws IOException {
+      readHeader();
+      while (in.position() < in.length()) {
+        int tag = in.readUnsignedByte();
+        in.readInt(); // the time of the record
+        long length = in.readUnsignedInt();
+        long start = in.position();
+        switch (tag) {
+          case UTF8:
+            long id = in.readNumber(idSize);
+            strings.put(id, new String(in.readBytes((int) length - idSize), Charsets.UTF_8));
+            break;
+          case LOAD_CLASS:
+            in.readInt(); // serial number
+            long classId = in.readNumber(idSize);
+            in.readInt(); // stack trace serial number
+            classNameIds.put(classId, in.readNumber(idSize));
+            break;
+          case HEAP_DUMP:
+          case HEAP_DUMP_SEGMENT:
+            heapDumps.add(new long[] { start, start + length });
+            readHeapDump(start + length, false);
+            break;
+          default:
+            // stack traces, allocation sites etc
+        }
+        in.seek(start + length);
+      }
+      linkClasses();
+
+      classOf = classOfList.toArray();
+      firstReference = new int[classOf.length + 1];
+      for (long[] heapDump : heapDumps) {
+        in.seek(heapDump[0]);
+        readHeapDump(heapDump[1], true);
+      }
+      Preconditions.checkState(object == classOf.length);
+      return new HprofHeap(layout, ImmutableList.copyOf(classes), objectNumbers, classOf,
+          lengthsList.toArray(), firstReference, references.toArray());
+    }
+
+    private void readHeader() throws IOException {
+      StringBuilder format = new StringBuilder();
+      for (int c; (c = in.readUnsignedByte()) != 0 && format.length() < 32; ) {
+        format.append((char) c);
+      }
+      if (!format.toString().startsWith("JAVA PROFILE 1.0")) {
+        throw new IOException("Not a heap dump in the HPROF format");
+      }
+      idSize = in.readInt();
+      if (idSize != 4 && idSize != 8) {
+        throw new IOException("Unsupported id size: " + idSize);
+      }
+      in.readLong(); // the time of the dump
+      if (layout == null) {
+        layout = idSize == 4 ? new ObjectLayout(8, 4, 8) : new ObjectLayout(12, 4, 8);
+      }
+    }
+
+    /**
+     * Reads the sub-records of a heap dump (segment) up to the given position.
+     * The first pass reads the classes, and numbers the objects; the second
+     * reads their references.
+     */
+    private void readHeapDump(long end, boolean secondPass) throws IOException {
+      while (in.position() < end) {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+          case ROOT_UNKNOWN:
+          case ROOT_STICKY_CLASS:
+          case ROOT_MONITOR_USED:
+            in.skip(idSize);
+            break;
+          case ROOT_JNI_GLOBAL:
+            in.skip(2 * idSize);
+            break;
+          case ROOT_NATIVE_STACK:
+          case ROOT_THREAD_BLOCK:
+            in.skip(idSize + 4);
+            break;
+          case ROOT_JNI_LOCAL:
+          case ROOT_JAVA_FRAME:
+          case ROOT_THREAD_OBJECT:
+            in.skip(idSize + 8);
+            break;
+          case CLASS_DUMP:
+            readClassDump(!secondPass);
+            break;
+          case INSTANCE_DUMP:
+            if (secondPass) {
+              readInstanceReferences();
+            } else {
+              readInstance();
+            }
+            break;
+          case OBJECT_ARRAY_DUMP:
+            if (secondPass) {
+              readArrayReferences();
+            } else {
+              readObjectArray();
+            }
+            break;
+          case PRIMITIVE_ARRAY_DUMP:
+            readPrimitiveArray(!secondPass);
+            break;
+          default:
+            throw new IOException(String.format("Unknown heap dump record 0x%02x at %d",
+                tag, in.position() - 1));
+        }
+      }
+    }
+
+    private void readClassDump(boolean record) throws IOException {
+      ClassInfo type = classInfo(in.readNumber(idSize));
+      in.readInt(); // stack trace serial number
+      long superclassId = in.readNumber(idSize);
+      // the class loader, the signers, the protection domain, and two reserved ids
+      in.skip(5 * idSize);
+      in.readInt(); // the instance size (of the fields in the dump)
+      int constants = in.readUnsignedShort();
+      for (int i = 0; i < constants; i++) {
+        in.readUnsignedShort(); // constant pool index
+        skipValue(in.readUnsignedByte());
+      }
+      int statics = in.readUnsignedShort();
+      long[] staticNameIds = new long[statics];
+      long[] staticValues = new long[statics];
+      int staticReferences = 0;
+      for (int i = 0; i < statics; i++) {
+        long nameId = in.readNumber(idSize);
+        int basicType = in.readUnsignedByte();
+        if (basicType == OBJECT) {
+          staticNameIds[staticReferences] = nameId;
+          staticValues[staticReferences++] = in.readNumber(idSize);
+        } else {
+          skipValue(basicType);
+        }
+      }
+      int fields = in.readUnsignedShort();
+      byte[] fieldTypes = new byte[fields];
+      for (int i = 0; i < fields; i++) {
+        in.skip(idSize); // the name
+        fieldTypes[i] = (byte) checkBasicType(in.readUnsignedByte());
+      }
+      if (record) {
+        type.superclassId = superclassId;
+        type.staticNameIds = Arrays.copyOf(staticNameIds, staticReferences);
+        type.staticValues = Arrays.copyOf(staticValues, staticReferences);
+        type.fieldTypes = fieldTypes;
+      }
+    }
+
+    private void readInstance() throws IOException {
+      objectNumbers.put(in.readNumber(idSize), classOfList.size());
+      in.readInt(); // stack trace serial number
+      classOfList.add(classNumber(in.readNumber(idSize)));
+      lengthsList.add(-1);
+      in.skip(in.readUnsignedInt());
+    }
+
+    private void readObjectArray() throws IOException {
+      objectNumbers.put(in.readNumber(idSize), classOfList.size());
+      in.readInt(); // stack trace serial number
+      int length = in.readInt();
+      classOfList.add(classNumber(in.readNumber(idSize)));
+      lengthsList.add(length);
+      in.skip((long) length * idSize);
+    }
+
+    private void readPrimitiveArray(boolean record) throws IOException {
+      long id = in.readNumber(idSize);
+      in.readInt(); // stack trace serial number
+      int length = in.readInt();
+      int basicType = checkBasicType(in.readUnsignedByte());
+      if (record) {
+        objectNumbers.put(id, classOfList.size());
+        classOfList.add(primitiveArrayClass(basicType));
+        lengthsList.add(length);
+      } else {
+        firstReference[++object] = references.size();
+      }
+      in.skip((long) length * valueSizes[basicType]);
+    }
+
+    private void readInstanceReferences() throws IOException {
+      in.skip(idSize + 4 + idSize); // the id, the stack trace serial number, the class id
+      long end = in.readUnsignedInt();
+      end += in.position();
+      ClassInfo type = classes.get(classOf[object]);
+      if (end - in.position() != type.instanceFieldBytes) {
+        throw new IOException("The instance at " + in.position() + " does not match its class, "
+            + type.name);
+      }
+      for (byte basicType : type.instanceFieldTypes) {
+        if (basicType == OBJECT) {
+          addReference(in.readNumber(idSize));
+        } else {
+          in.skip(valueSizes[basicType]);
+        }
+      }
+      firstReference[++object] = references.size();
+    }
+
+    private void readArrayReferences() throws IOException {
+      in.skip(idSize + 4); // the id, the stack trace serial number
+      int length = in.readInt();
+      in.skip(idSize); // the class id
+      for (int i = 0; i < length; i++) {
+        addReference(in.readNumber(idSize));
+      }
+      firstReference[++object] = references.size();
+    }
+
+    private void addReference(long id) {
+      // null, a Class object (these are not numbered), or an enum constant are left out
+      int target = objectNumbers.get(id);
+      if (target >= 0 && !classes.get(classOf[target]).isEnum) {
+        references.add(target);
+      }
+    }
+
+    private void skipValue(int basicType) throws IOException {
+      in.skip(checkBasicType(basicType) == OBJECT ? idSize : valueSizes[basicType]);
+    }
+
+    private int checkBasicType(int basicType) throws IOException {
+      if (basicType != OBJECT && (basicType >= kinds.length || kinds[basicType] == null)) {
+        throw new IOException("Unknown basic type " + basicType + " at " + (in.position() - 1));
+      }
+      return basicType;
+    }
+
+    private ClassInfo classInfo(long id) {
+      return classes.get(classNumber(id));
+    }
+
+    private int classNumber(long id) {
+      int number = classNumbers.get(id);
+      if (number < 0) {
+        number = classes.size();
+        classes.add(new ClassInfo(id));
+        classNumbers.put(id, number);
+      }
+      return number;
+    }
+
+    private int primitiveArrayClass(int basicType) {
+      if (primitiveArrayClasses[basicType] < 0) {
+        // primitive array records do not refer to their classes, so these get classes of their own
+        ClassInfo type = new ClassInfo(0);
+        type.name = "[" + descriptors.charAt(basicType);
+        primitiveArrayClasses[basicType] = classes.size();
+        classes.add(type);
+      }
+      return primitiveArrayClasses[basicType];
+    }
+
+    /**
+     * Resolves the names and the superclasses of the classes, and derives what
+     * the measurements need from the types of their fields.
+     */
+    private void linkClasses() {
+      for (ClassInfo type : classes) {
+        if (type.name == null) {
+          String name = strings.get(classNameIds.get(type.id));
+          type.name = name == null ? "0x" + Long.toHexString(type.id) : name.replace('/', '.');
+        }
+        type.isArray = type.name.startsWith("[");
+        if (type.isArray && type.name.length() == 2) {
+          type.elementKind = kinds[descriptors.indexOf(type.name.charAt(1))];
+        }
+        int superclass = classNumbers.get(type.superclassId);
+        type.superclass = superclass < 0 ? null : classes.get(superclass);
+        type.staticNames = new String[type.staticNameIds.length];
+        for (int i = 0; i < type.staticNames.length; i++) {
+          type.staticNames[i] = strings.get(type.staticNameIds[i]);
+        }
+      }
+      for (ClassInfo type : classes) {
+        deriveFields(type);
+      }
+      strings.clear();
+    }
+
+    private void deriveFields(ClassInfo type) {
+      if (type.layout != null) {
+        return;
+      }
+      ClassInfo superclass = type.superclass;
+      ObjectLayout.ClassLayout superLayout;
+      byte[] superFieldTypes;
+      if (superclass == null) {
+        superLayout = layout.emptyLayout();
+        superFieldTypes = new byte[0];
+      } else {
+        deriveFields(superclass);
+        superLayout = superclass.layout;
+        superFieldTypes = superclass.instanceFieldTypes;
+        type.isEnum = superclass.isEnum || superclass.name.equals("java.lang.Enum");
+        type.referenceSlots = superclass.referenceSlots;
+        type.instanceFieldBytes = superclass.instanceFieldBytes;
+        System.arraycopy(superclass.primitives, 0, type.primitives, 0, type.primitives.length);
+      }
+      int[] sizes = new int[type.fieldTypes.length];
+      for (int i = 0; i < sizes.length; i++) {
+        int basicType = type.fieldTypes[i];
+        if (basicType == OBJECT) {
+          sizes[i] = layout.getReferenceSize();
+          type.referenceSlots++;
+          type.instanceFieldBytes += idSize;
+        } else {
+          sizes[i] = valueSizes[basicType];
+          type.primitives[kinds[basicType].ordinal()]++;
+          type.instanceFieldBytes += valueSizes[basicType];
+        }
+      }
+      type.layout = layout.layOut(superLayout, sizes);
+      type.instanceFieldTypes = new byte[type.fieldTypes.length + superFieldTypes.length];
+      System.arraycopy(type.fieldTypes, 0, type.instanceFieldTypes, 0, type.fieldTypes.length);
+      System.arraycopy(superFieldTypes, 0, type.instanceFieldTypes, type.fieldTypes.length,
+          superFieldTypes.length);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A set of objects that compares its elements by identity, purpose-built for
+ * remembering the objects that a traversal has already visited.
+ *
+ * <p>Unlike {@code Collections.newSetFromMap(new IdentityHashMap())}, which
+ * spends two table slots per element (a key and a dummy value) plus the wrapper
+ * objects, this set stores each element in a single slot of a plain
+ * {@code Object[]}, using open addressing with linear probing over
+ * {@link System#identityHashCode(Object)}. Elements cannot be removed, and
+ * {@code null} is not permitted.
+ *
+ * <p>If the number of objects to be added is roughly known, passing it to
+ * {@link #IdentitySet(int)} avoids any rehashing while the set grows.
+ */
+public final class IdentitySet {
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  /**
+   * The size of a reference in the running VM (4 bytes with compressed
+   * references, 8 bytes otherwise).
+   */
+  static final int REFERENCE_SIZE = ObjectLayout.current().getReferenceSize();
+
+  private Object[] table;
+  private int size;
+  private int threshold;
+
+  /**
+   * Creates an empty set with a small initial capacity.
+   */
+  public IdentitySet() {
+    this(MINIMUM_CAPACITY / 2);
+  }
+
+  /**
+   * Creates an empty set that can hold {@code expectedSize} objects without
+   * growing.
+   *
+   * @param expectedSize the number of objects that the set is expected to hold
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  public IdentitySet(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size");
+    int capacity = MINIMUM_CAPACITY;
+    while (capacity < MAXIMUM_CAPACITY && thresholdOf(capacity) < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * Adds an object to this set, unless it is already contained.
+   *
+   * @return {@code true} if the object was added, {@code false} if it was
+   * already contained in the set
+   */
+  public boolean add(Object o) {
+    Preconditions.checkNotNull(o);
+    Object[] tab = table;
+    int mask = tab.length - 1;
+    for (int i = indexOf(o, mask); ; i = (i + 1) & mask) {
+      Object element = tab[i];
+      if (element == null) {
+        tab[i] = o;
+        if (++size > threshold) {
+          resize();
+        }
+        return true;
+      }
+      if (element == o) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns whether the specified object is contained in this set.
+   */
+  public boolean contains(Object o) {
+    Preconditions.checkNotNull(o);
+    Object[] tab = table;
+    int mask = tab.length - 1;
+    for (int i = indexOf(o, mask); ; i = (i + 1) & mask) {
+      Object element = tab[i];
+      if (element == null) return false;
+      if (element == o) return true;
+    }
+  }
+
+  /**
+   * Returns the number of objects in this set.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of slots of the hash table of this set.
+   */
+  public int capacity() {
+    return table.length;
+  }
+
+  /**
+   * Returns an estimate of the memory, in bytes, that this set occupies
+   * (excluding the objects it contains): the size of its hash table, plus
+   * the object headers.
+   */
+  public long overheadBytes() {
+    // the headers of this object and of the table, roughly
+    return 2 * 16 + (long) table.length * REFERENCE_SIZE;
+  }
+
+  private void resize() {
+    Object[] oldTable = table;
+    Preconditions.checkState(oldTable.length < MAXIMUM_CAPACITY, "Set is too large");
+    allocate(oldTable.length * 2);
+    Object[] tab = table;
+    int mask = tab.length - 1;
+    for (Object element : oldTable) {
+      if (element == null) continue;
+      int i = indexOf(element, mask);
+      while (tab[i] != null) {
+        i = (i + 1) & mask;
+      }
+      tab[i] = element;
+    }
+  }
+
+  private void allocate(int capacity) {
+    table = new Object[capacity];
+    threshold = thresholdOf(capacity);
+  }
+
+  private static int thresholdOf(int capacity) {
+    // a maximum load factor of 3/4
+    return capacity - (capacity >>> 2);
+  }
+
+  private static int indexOf(Object o, int mask) {
+    // identity hash codes are not well-distributed in the low bits on every VM,
+    // so they are scrambled (by the golden ratio) before being masked
+    int h = System.identityHashCode(o) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -1,6 +1,5 @@
 package objectexplorer;
 
-import com.google.common.base.Preconditions;
 import java.lang.instrument.Instrumentation;
 
 /**
@@ -16,13 +15,43 @@ public class InstrumentationGrabber {
         InstrumentationGrabber.instrumentation = inst;
     }
 
+    /**
+     * Called when the agent is loaded into a running VM (see {@link AgentLoader}
+     * and {@link Main}). The agent may be loaded more than once; only the first
+     * {@link Instrumentation} is kept. Non-empty arguments are a command sent by
+     * {@link Main}.
+     */
+    public static void agentmain(String agentArgs, Instrumentation inst) {
+        synchronized (InstrumentationGrabber.class) {
+            if (InstrumentationGrabber.instrumentation == null) {
+                InstrumentationGrabber.instrumentation = inst;
+            }
+        }
+        if (agentArgs != null && agentArgs.length() > 0) {
+            Main.runAgentCommand(agentArgs, instrumentation);
+        }
+    }
+
     private static void checkSetup() {
-        Preconditions.checkState(instrumentation != null, "Instrumentation is not setup properly. "
-                + "You have to pass -javaagent:path/to/object-explorer.jar to the java interpreter");
+        // only the JDK here: this is the entry point of the agent, which must load
+        // without its libraries
+        if (instrumentation == null) {
+            throw new IllegalStateException("Instrumentation is not setup properly. "
+                + "You have to pass -javaagent:path/to/object-explorer.jar to the java "
+                + "interpreter, or call AgentLoader.install()");
+        }
     }
 
     static Instrumentation instrumentation() {
         checkSetup();
         return instrumentation;
     }
+
+    /**
+     * Returns the {@link Instrumentation}, or {@code null} if the agent has not
+     * been installed.
+     */
+    static Instrumentation instrumentationIfAvailable() {
+        return instrumentation;
+    }
 }
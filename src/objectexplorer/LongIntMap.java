@@ -0,0 +1,99 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A map from (non-zero) longs to non-negative ints, without boxing: an open
+ * addressing hash table with linear probing, over parallel arrays of keys and
+ * values. This is what maps the ids of a heap dump (addresses, which are never
+ * zero) to the consecutive numbers of the objects.
+ */
+final class LongIntMap {
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private int threshold;
+
+  LongIntMap() {
+    allocate(MINIMUM_CAPACITY);
+  }
+
+  /**
+   * Maps the given key to the given value, replacing any previous value.
+   */
+  void put(long key, int value) {
+    Preconditions.checkArgument(key != 0, "Zero key");
+    Preconditions.checkArgument(value >= 0, "Negative value");
+    long[] k = keys;
+    int mask = k.length - 1;
+    for (int i = indexOf(key, mask); ; i = (i + 1) & mask) {
+      if (k[i] == key) {
+        values[i] = value;
+        return;
+      }
+      if (k[i] == 0) {
+        k[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+          resize();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the value of the given key, or -1 if it has none.
+   */
+  int get(long key) {
+    if (key == 0) return -1;
+    long[] k = keys;
+    int mask = k.length - 1;
+    for (int i = indexOf(key, mask); ; i = (i + 1) & mask) {
+      if (k[i] == key) return values[i];
+      if (k[i] == 0) return -1;
+    }
+  }
+
+  /**
+   * Returns the number of keys.
+   */
+  int size() {
+    return size;
+  }
+
+  private void resize() {
+    Preconditions.checkState(keys.length < MAXIMUM_CAPACITY, "Too many keys");
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    long[] k = keys;
+    int mask = k.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != 0) {
+        int i = indexOf(oldKeys[j], mask);
+        while (k[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        k[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    // a maximum load factor of 3/4
+    threshold = capacity - (capacity >>> 2);
+  }
+
+  private static int indexOf(long key, int mask) {
+    // ids are aligned addresses, so their low bits carry little information
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
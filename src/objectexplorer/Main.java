@@ -0,0 +1,141 @@
+package objectexplorer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Measures an object graph of an already running Java VM, by attaching to it
+ * and loading the agent of this library into it, or of a heap dump of a VM.
+ * The root of the graph is the value of a static field. Usage:
+ *
+ * <pre>
+ *   java -jar object-explorer.jar &lt;pid&gt; &lt;class name&gt;.&lt;static field name&gt;
+ *   java -jar object-explorer.jar &lt;heap dump&gt; &lt;class name&gt;.&lt;static field name&gt;
+ * </pre>
+ *
+ * <p>The measurement of a running VM runs in the target VM, which loads
+ * (besides the agent jar) the libraries named in the {@code Class-Path} of its
+ * manifest, i.e. {@code lib/guava-r09.jar} and {@code lib/jsr305.jar} next to
+ * the jar (where the build copies them); the results are written to a
+ * temporary file, which this launcher prints. The launcher itself, and the
+ * agent's handling of its command, only use the JDK, so that a missing
+ * library is reported rather than failing the attach. A heap dump (in the
+ * HPROF format) is measured by this launcher, through {@link HprofHeap}.
+ */
+public final class Main {
+  private static final String MEASURE = "measure";
+  private static final String SEPARATOR = "\t";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int HEAVIEST_PATHS = 20;
+
+  private Main() { }
+
+  public static void main(String[] args) throws Exception {
+    int dot = args.length == 2 ? args[1].lastIndexOf('.') : -1;
+    if (dot <= 0) {
+      System.err.println("Usage: java -jar object-explorer.jar "
+          + "<pid>|<heap dump> <class name>.<static field name>");
+      System.exit(2);
+    }
+    File heapDump = new File(args[0]);
+    if (heapDump.isFile()) {
+      measureHeapDump(heapDump, args[1].substring(0, dot), args[1].substring(dot + 1));
+      return;
+    }
+    File agentJar = AgentLoader.codeSource();
+    if (!agentJar.isFile()) {
+      System.err.println("Must be run from object-explorer.jar, not from " + agentJar);
+      System.exit(2);
+    }
+    File output = File.createTempFile("object-explorer", ".txt");
+    try {
+      String command = MEASURE + SEPARATOR + args[1].substring(0, dot) + SEPARATOR
+          + args[1].substring(dot + 1) + SEPARATOR + output.getAbsolutePath();
+      AgentLoader.loadAgent(args[0], agentJar.getAbsolutePath(), command);
+      System.out.print(new String(Files.readAllBytes(output.toPath()), UTF_8));
+    } finally {
+      output.delete();
+    }
+  }
+
+  private static void measureHeapDump(File heapDump, String className, String fieldName)
+      throws IOException {
+    HprofHeap heap = HprofHeap.load(heapDump);
+    long root = heap.getStaticField(className, fieldName);
+    System.out.println("Root: " + className + "." + fieldName
+        + (root == 0 ? " (null)" : " (" + heap.getClassName(root) + ")"));
+    if (root != 0) {
+      System.out.println("Bytes: " + heap.measureBytes(root));
+      System.out.println("Footprint: " + heap.measure(root));
+    }
+  }
+
+  /**
+   * Runs, in the target VM, a command sent by {@link #main}, writing its
+   * results (or its failure) to the output file named in the command.
+   */
+  static void runAgentCommand(String agentArgs, Instrumentation instrumentation) {
+    String[] command = agentArgs.split(SEPARATOR, -1);
+    if (command.length != 4 || !command[0].equals(MEASURE)) {
+      throw new IllegalArgumentException("Unknown agent command: " + agentArgs);
+    }
+    String className = command[1];
+    String fieldName = command[2];
+    PrintWriter out;
+    try {
+      out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(command[3]), UTF_8));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot write to " + command[3], e);
+    }
+    try {
+      Object root = staticFieldValue(loadedClass(className, instrumentation), fieldName);
+      out.println("Root: " + className + "." + fieldName
+          + (root == null ? " (null)" : " (" + root.getClass().getName() + ")"));
+      out.println("Bytes: " + MemoryMeasurer.measureBytes(root));
+      out.println("Footprint: " + ObjectGraphMeasurer.measure(root));
+      out.println("Heaviest paths:");
+      out.print(MemoryMeasurer.profilePaths(root).report(HEAVIEST_PATHS));
+    } catch (Exception | LinkageError e) {
+      // a LinkageError means that the libraries of the agent jar are missing
+      e.printStackTrace(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Finds the class among those already loaded by the VM (whichever class
+   * loader that was), falling back to loading it through the system class
+   * loader.
+   */
+  private static Class<?> loadedClass(String className, Instrumentation instrumentation)
+      throws ClassNotFoundException {
+    for (Class<?> loaded : instrumentation.getAllLoadedClasses()) {
+      if (loaded.getName().equals(className)) {
+        return loaded;
+      }
+    }
+    return Class.forName(className, true, ClassLoader.getSystemClassLoader());
+  }
+
+  private static Object staticFieldValue(Class<?> type, String fieldName)
+      throws NoSuchFieldException, IllegalAccessException {
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (field.getName().equals(fieldName) && Modifier.isStatic(field.getModifiers())) {
+          field.setAccessible(true);
+          return field.get(null);
+        }
+      }
+    }
+    throw new NoSuchFieldException("No static field " + fieldName + " in " + type.getName());
+  }
+}
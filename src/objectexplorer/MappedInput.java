@@ -0,0 +1,155 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a (big-endian) binary file through memory mappings of a window of it,
+ * so that files of any size can be read without copying them into the heap.
+ * The window is moved (i.e. a new one is mapped) whenever a read reaches past
+ * its end; it starts at the position of that read, so no value ever straddles
+ * two windows.
+ */
+final class MappedInput implements Closeable {
+  /**
+   * The size of the windows, unless the file is smaller; a mapping cannot be
+   * larger than 2GB.
+   */
+  static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long length;
+  private final int windowSize;
+
+  private MappedByteBuffer window;
+  private long windowStart;
+  private int windowLength;
+
+  // the position of the next read, relative to the window
+  private int offset;
+
+  MappedInput(File file, int windowSize) throws IOException {
+    Preconditions.checkArgument(windowSize >= 8, "Window too small");
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.length = channel.size();
+    this.windowSize = windowSize;
+    map(0);
+  }
+
+  /**
+   * Returns the length of the file.
+   */
+  long length() {
+    return length;
+  }
+
+  /**
+   * Returns the position (in the file) of the next read.
+   */
+  long position() {
+    return windowStart + offset;
+  }
+
+  /**
+   * Moves to the given position of the file.
+   */
+  void seek(long position) throws IOException {
+    Preconditions.checkArgument(position >= 0, "Negative position");
+    if (position < windowStart || position > windowStart + windowLength) {
+      map(position);
+    } else {
+      offset = (int) (position - windowStart);
+    }
+  }
+
+  /**
+   * Skips the given number of bytes.
+   */
+  void skip(long bytes) throws IOException {
+    seek(position() + bytes);
+  }
+
+  int readUnsignedByte() throws IOException {
+    ensure(1);
+    return window.get(offset++) & 0xFF;
+  }
+
+  int readUnsignedShort() throws IOException {
+    ensure(2);
+    int value = window.getShort(offset) & 0xFFFF;
+    offset += 2;
+    return value;
+  }
+
+  int readInt() throws IOException {
+    ensure(4);
+    int value = window.getInt(offset);
+    offset += 4;
+    return value;
+  }
+
+  long readUnsignedInt() throws IOException {
+    return readInt() & 0xFFFFFFFFL;
+  }
+
+  long readLong() throws IOException {
+    ensure(8);
+    long value = window.getLong(offset);
+    offset += 8;
+    return value;
+  }
+
+  /**
+   * Reads a number of the given size (4 or 8 bytes), e.g. an object id.
+   */
+  long readNumber(int size) throws IOException {
+    return size == 4 ? readUnsignedInt() : readLong();
+  }
+
+  /**
+   * Reads the given number of bytes.
+   */
+  byte[] readBytes(int count) throws IOException {
+    byte[] bytes = new byte[count];
+    int done = 0;
+    while (done < count) {
+      ensure(1);
+      int chunk = Math.min(count - done, windowLength - offset);
+      window.position(offset);
+      window.get(bytes, done, chunk);
+      offset += chunk;
+      done += chunk;
+    }
+    return bytes;
+  }
+
+  private void ensure(int bytes) throws IOException {
+    if (offset + bytes > windowLength) {
+      long position = position();
+      if (position + bytes > length) {
+        throw new EOFException("Unexpected end of file at " + position);
+      }
+      map(position);
+    }
+  }
+
+  private void map(long position) throws IOException {
+    windowStart = position;
+    windowLength = (int) Math.min(windowSize, Math.max(0, length - position));
+    window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+    offset = 0;
+  }
+
+  public void close() throws IOException {
+    window = null;
+    file.close();
+  }
+}
@@ -1,36 +1,53 @@
 package objectexplorer;
 
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectVisitor.Traversal;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
-import java.lang.instrument.Instrumentation;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nullable;
 
 /**
  * A utility that can be used to measure the memory footprint of an arbitrary
  * object graph. In a nutshell, the user gives a root object, and this class
  * recursively and reflectively explores the object's references.
  *
- * <p>This class can only be used if the containing jar has been given to the
- * Java VM as an agent, as follows:
+ * <p>The size of each object is most accurately given by the Java VM, which is
+ * only possible if the containing jar has been given to the Java VM as an
+ * agent, as follows:
  * {@code -javaagent:path/to/object-explorer.jar}
+ * Otherwise, the sizes are computed by the {@link ObjectLayout} model of the
+ * running VM, which agrees with the VM for the common (HotSpot) cases.
  *
  * @see #measureBytes(Object)
  * @see #measureBytes(Object, Predicate)
+ * @see #measureBytes(Object, Predicate, TraversalBudget)
+ * @see #measureBytes(Object, Predicate, TraversalStats)
+ * @see #measureAll(Object, Predicate)
+ * @see #estimateBytes(Object, Predicate, Sampling)
+ * @see #measureRoots(Map, Predicate)
+ * @see #snapshot(Object, Predicate, int)
+ * @see #profilePaths(Object, Predicate, int)
+ * @see #measureBytesInParallel(Object, Predicate)
  */
 public class MemoryMeasurer {
-  private static final Instrumentation instrumentation =
-    InstrumentationGrabber.instrumentation();
+  private static final int DEFAULT_SNAPSHOT_DEPTH = 3;
+  private static final int DEFAULT_PROFILE_DEPTH = 16;
 
   /*
-   * The bare minimum memory footprint of an enum value, measured empirically.
-   * This should be subtracted for any enum value encountered, since it
-   * is static in nature.
+   * The bare minimum memory footprint of an enum value is measured empirically,
+   * as the size of this constant. This should be subtracted for any enum value
+   * encountered, since it is static in nature. It is not kept in a constant,
+   * so that it comes from the same source of sizes (see ShallowSizes) as the
+   * size it is subtracted from.
    */
-  private static final long costOfBareEnumConstant =
-    instrumentation.getObjectSize(DummyEnum.CONSTANT);
-
   private enum DummyEnum {
     CONSTANT;
   }
@@ -71,31 +88,563 @@ public class MemoryMeasurer {
   public static long measureBytes(Object rootObject, Predicate<Object> objectAcceptor) {
     Preconditions.checkNotNull(objectAcceptor, "predicate");
 
-    Predicate<Chain> completePredicate = Predicates.and(ImmutableList.of(
-        new ObjectExplorer.AtMostOncePredicate(),
-        ObjectExplorer.notEnumFieldsOrClasses,
-        Predicates.compose(objectAcceptor, ObjectExplorer.chainToObject)
-    ));
+    return ObjectExplorer.exploreObject(rootObject, new MemoryMeasurerVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor)));
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} does, but leaving out the objects
+   * of the classes that the given {@link ClassFilter} rejects, and whatever is
+   * only reachable through the fields that the given {@link FieldFilter}
+   * rejects. The filters decide once per class (and field), so they should be
+   * preferred to an object predicate whenever the decision does not depend on
+   * the object itself. (A rejected field still counts in the shallow size of
+   * its object.)
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param classFilter the filter of the classes of the objects to measure
+   * @param fieldFilter the filter of the fields to follow
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the memory footprint, in bytes, of the object graph
+   */
+  public static long measureBytes(Object rootObject, ClassFilter classFilter,
+      FieldFilter fieldFilter, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject, new MemoryMeasurerVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), classFilter, objectAcceptor)),
+        EnumSet.noneOf(Feature.class), fieldFilter);
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} does, but without exceeding the
+   * given budget. If the budget runs out, the traversal stops, and the
+   * measurement so far is returned, marked as truncated.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param budget the bounds of the measurement
+   * @return the (possibly partial) memory footprint of the object graph,
+   * along with the number of objects that were measured
+   */
+  public static Measurement measureBytes(Object rootObject, Predicate<Object> objectAcceptor,
+      TraversalBudget budget) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(budget, "budget");
+
+    return ObjectExplorer.exploreObject(rootObject, new BudgetedMeasurerVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor), budget.start()));
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} does, and adds the metrics of the
+   * traversal (including the size of its set of visited objects) to the given
+   * {@link TraversalStats}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param stats where the metrics of the traversal are added
+   * @return the memory footprint, in bytes, of the object graph
+   */
+  public static long measureBytes(Object rootObject, Predicate<Object> objectAcceptor,
+      TraversalStats stats) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(stats, "stats");
+
+    ObjectExplorer.AtMostOncePredicate atMostOnce = new ObjectExplorer.AtMostOncePredicate();
+    long bytes = ObjectExplorer.exploreObject(rootObject, new MemoryMeasurerVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(atMostOnce), objectAcceptor)),
+        EnumSet.noneOf(Feature.class), stats);
+    stats.recordVisitedSetSize(atMostOnce.visited().size());
+    return bytes;
+  }
+
+  /**
+   * Estimates the memory footprint, in bytes, of an object graph, as
+   * {@link #measureBytes(Object, Predicate)} measures it, but only exploring
+   * a sample of the elements of large reference arrays (such as the tables of
+   * large hash maps), as specified by the given {@link Sampling}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param sampling which arrays are sampled, and how much
+   * @return the estimated memory footprint, in bytes, of the object graph
+   */
+  public static Estimate estimateBytes(Object rootObject, Predicate<Object> objectAcceptor,
+      Sampling sampling) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(sampling, "sampling");
+
+    return SamplingExplorer.explore(rootObject, new BytesMeter(sampling,
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor)),
+        EnumSet.noneOf(Feature.class), sampling)[0];
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of several object graphs at
+   * once, telling apart the objects that only one root reaches from those that
+   * several roots share.
+   *
+   * <p>Equivalent to {@code measureRoots(roots, Predicates.alwaysTrue())}.
+   *
+   * @param roots the root objects that define the object graphs to be
+   * measured, by key ({@code null} roots are measured as empty graphs)
+   * @return the exclusive and shared bytes of each root, and the bytes of
+   * the union of the object graphs
+   */
+  public static <K> MultiRootMeasurement<K> measureRoots(Map<K, ?> roots) {
+    return measureRoots(roots, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of several object graphs at
+   * once, telling apart the objects that only one root reaches from those that
+   * several roots share. Each object graph is defined as in
+   * {@link #measureBytes(Object, Predicate)}, and an object that several roots
+   * reach is only explored (and counted in the union) once.
+   *
+   * @param roots the root objects that define the object graphs to be
+   * measured, by key ({@code null} roots are measured as empty graphs)
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graphs), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the exclusive and shared bytes of each root, and the bytes of
+   * the union of the object graphs
+   */
+  public static <K> MultiRootMeasurement<K> measureRoots(Map<K, ?> roots,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(roots, "roots");
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    OwnershipAnalysis analysis = new OwnershipAnalysis(
+        ObjectExplorer.measuredEdges(ClassFilter.acceptingAll(), objectAcceptor), roots.size());
+    int root = 0;
+    for (Object rootObject : roots.values()) {
+      if (rootObject != null) {
+        analysis.addRoot(root, rootObject);
+      }
+      root++;
+    }
+    analysis.finish();
+
+    ImmutableMap.Builder<K, MultiRootMeasurement.RootBytes> bytes = ImmutableMap.builder();
+    root = 0;
+    for (K key : roots.keySet()) {
+      bytes.put(key, new MultiRootMeasurement.RootBytes(
+          analysis.exclusiveBytes(root), analysis.sharedBytes(root)));
+      root++;
+    }
+    return new MultiRootMeasurement<K>(bytes.build(), analysis.unionBytes(),
+        analysis.sharedUnionBytes());
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, exploring it
+   * in parallel. The result is the same as that of {@link
+   * #measureBytes(Object)}.
+   *
+   * <p>Equivalent to {@code measureBytesInParallel(rootObject,
+   * Predicates.alwaysTrue())}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the memory footprint, in bytes, of the object graph
+   */
+  public static long measureBytesInParallel(Object rootObject) {
+    return measureBytesInParallel(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, exploring it
+   * in parallel with the threads of a newly created {@link ForkJoinPool}. The
+   * result is the same as that of {@link #measureBytes(Object, Predicate)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the memory footprint, in bytes, of the object graph
+   * @see ObjectExplorer#exploreObjectInParallel(Object, SplittableEdgeVisitor, EnumSet)
+   */
+  public static long measureBytesInParallel(Object rootObject, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObjectInParallel(rootObject, new MemoryMeasurerVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdgesConcurrently(), objectAcceptor)),
+        EnumSet.noneOf(Feature.class));
+  }
+
+  /**
+   * Measures the memory footprint, in bytes, of an object graph, exploring it
+   * in parallel with the threads of the given pool. The result is the same as
+   * that of {@link #measureBytes(Object, Predicate)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param pool the pool whose threads explore the object graph
+   * @return the memory footprint, in bytes, of the object graph
+   * @see ObjectExplorer#exploreObjectInParallel(Object, SplittableEdgeVisitor,
+   * EnumSet, ForkJoinPool)
+   */
+  public static long measureBytesInParallel(Object rootObject, Predicate<Object> objectAcceptor,
+      ForkJoinPool pool) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(pool, "pool");
+
+    return ObjectExplorer.exploreObjectInParallel(rootObject, new MemoryMeasurerVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdgesConcurrently(), objectAcceptor)),
+        EnumSet.noneOf(Feature.class), pool);
+  }
+
+  /**
+   * The result of a measurement that is bounded by a {@link TraversalBudget}.
+   */
+  public static final class Measurement {
+    private final long bytes;
+    private final long objects;
+    private final TraversalBudget.Exhaustion exhaustion;
+
+    Measurement(long bytes, long objects, @Nullable TraversalBudget.Exhaustion exhaustion) {
+      this.bytes = bytes;
+      this.objects = objects;
+      this.exhaustion = exhaustion;
+    }
+
+    /**
+     * Returns the memory footprint, in bytes, of the measured objects.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the number of measured objects.
+     */
+    public long getObjects() {
+      return objects;
+    }
+
+    /**
+     * Returns whether the measurement ran out of budget, in which case the
+     * object graph may have had more objects than were measured.
+     */
+    public boolean isTruncated() {
+      return exhaustion != null;
+    }
+
+    /**
+     * Returns the bound of the budget that ended the measurement, or
+     * {@code null} if the whole object graph was measured.
+     */
+    public @Nullable TraversalBudget.Exhaustion getExhaustion() {
+      return exhaustion;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Bytes", bytes)
+      .add("Objects", objects)
+      .add("Truncated", exhaustion != null)
+      .add("Exhaustion", exhaustion)
+      .toString();
+    }
+  }
+
+  /**
+   * Measures the memory footprint of an object graph, broken down by class.
+   *
+   * <p>Equivalent to {@code measureHistogram(rootObject,
+   * Predicates.alwaysTrue())}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the number of instances and the bytes of each class of the
+   * object graph
+   */
+  public static ClassHistogram measureHistogram(Object rootObject) {
+    return measureHistogram(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the memory footprint of an object graph, broken down by class.
+   * The object graph is defined as in {@link #measureBytes(Object, Predicate)},
+   * and the total bytes of the histogram are the result of that method.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the number of instances and the bytes of each class of the
+   * object graph
+   */
+  public static ClassHistogram measureHistogram(Object rootObject,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject, new HistogramVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor)));
+  }
 
-    return ObjectExplorer.exploreObject(rootObject,
-        new MemoryMeasurerVisitor(completePredicate));
+  /**
+   * Measures both the memory footprint, in bytes, and the {@linkplain
+   * ObjectGraphMeasurer.Footprint footprint} of an object graph.
+   *
+   * <p>Equivalent to {@code measureAll(rootObject, Predicates.alwaysTrue())}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the bytes, objects, references and primitives of the object graph
+   */
+  public static GraphMeasurement measureAll(Object rootObject) {
+    return measureAll(rootObject, Predicates.alwaysTrue());
   }
 
-  private static class MemoryMeasurerVisitor implements ObjectVisitor<Long> {
+  /**
+   * Measures both the memory footprint, in bytes, and the {@linkplain
+   * ObjectGraphMeasurer.Footprint footprint} of an object graph, in a single
+   * traversal (with a single set of visited objects), rather than in the two
+   * that {@link #measureBytes(Object, Predicate)} and
+   * {@link ObjectGraphMeasurer#measure(Object, Predicate)} take; the results
+   * are the same as theirs.
+   *
+   * <p>Both measurements share that set, which is sound only because they
+   * accept exactly the same objects. (Measurements that accept different
+   * objects each need a set of their own, even when they are run in a single
+   * traversal through a {@link CompositeVisitor}.)
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the bytes, objects, references and primitives of the object graph
+   */
+  public static GraphMeasurement measureAll(Object rootObject, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject, new GraphMeasurementVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor), null),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL));
+  }
+
+  /**
+   * Measures both the memory footprint, in bytes, and the {@link Footprint}
+   * of an object graph in a single traversal, filtering it as
+   * {@link #measureBytes(Object, ClassFilter, FieldFilter, Predicate)} does.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param classFilter the filter of the classes of the objects to measure
+   * @param fieldFilter the filter of the fields to follow
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return both measurements of the object graph
+   */
+  public static GraphMeasurement measureAll(Object rootObject, ClassFilter classFilter,
+      FieldFilter fieldFilter, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject, new GraphMeasurementVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), classFilter, objectAcceptor), null),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL), fieldFilter);
+  }
+
+  /**
+   * Measures both the memory footprint, in bytes, and the {@linkplain
+   * ObjectGraphMeasurer.Footprint footprint} of an object graph, as
+   * {@link #measureAll(Object, Predicate)} does, but without exceeding the
+   * given budget. If the budget runs out, the traversal stops, and the
+   * measurement so far is returned, marked as truncated.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param budget the bounds of the measurement
+   * @return the (possibly partial) bytes, objects, references and primitives
+   * of the object graph
+   */
+  public static GraphMeasurement measureAll(Object rootObject, Predicate<Object> objectAcceptor,
+      TraversalBudget budget) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(budget, "budget");
+
+    return ObjectExplorer.exploreObject(rootObject, new GraphMeasurementVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor), budget.start()),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL));
+  }
+
+  /**
+   * Takes a snapshot of the memory footprint of an object graph, with paths
+   * up to the default depth (3).
+   *
+   * <p>Equivalent to {@code snapshot(rootObject, Predicates.alwaysTrue(), 3)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the instances and bytes of each class and each path of the object
+   * graph, to be compared with a later snapshot of it
+   */
+  public static MemorySnapshot snapshot(Object rootObject) {
+    return snapshot(rootObject, Predicates.alwaysTrue(), DEFAULT_SNAPSHOT_DEPTH);
+  }
+
+  /**
+   * Takes a snapshot of the memory footprint of an object graph, with paths
+   * up to the default depth (3).
+   *
+   * <p>Equivalent to {@code snapshot(rootObject, objectAcceptor, 3)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the instances and bytes of each class and each path of the object
+   * graph, to be compared with a later snapshot of it
+   */
+  public static MemorySnapshot snapshot(Object rootObject, Predicate<Object> objectAcceptor) {
+    return snapshot(rootObject, objectAcceptor, DEFAULT_SNAPSHOT_DEPTH);
+  }
+
+  /**
+   * Takes a snapshot of the memory footprint of an object graph, in a single
+   * traversal of it. The object graph is defined as in
+   * {@link #measureBytes(Object, Predicate)}, and the total bytes of the
+   * snapshot are the result of that method. The snapshot keeps no references
+   * to the objects of the graph, and its size depends on the number of
+   * classes and paths only.
+   *
+   * <p>Taking a snapshot of the same root periodically, and diffing it with
+   * the previous one (see {@link MemorySnapshot#diffFrom(MemorySnapshot)}),
+   * shows which classes and paths grow, while the growth is still small.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param pathDepth the maximum length of the paths of the snapshot; the
+   * objects that are reached through longer paths are counted in the
+   * truncated ones
+   * @return the instances and bytes of each class and each path of the object
+   * graph, to be compared with a later snapshot of it
+   */
+  public static MemorySnapshot snapshot(Object rootObject, Predicate<Object> objectAcceptor,
+      int pathDepth) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkArgument(pathDepth >= 0, "Negative path depth");
+
+    return ObjectExplorer.exploreObject(rootObject, new MemorySnapshot.Recorder(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor), pathDepth));
+  }
+
+  /**
+   * Profiles the memory footprint of an object graph by path, with paths up
+   * to the default depth (16).
+   *
+   * <p>Equivalent to {@code profilePaths(rootObject, Predicates.alwaysTrue(),
+   * 16)}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @return the instances and bytes of each path of the object graph
+   */
+  public static PathProfile profilePaths(Object rootObject) {
+    return profilePaths(rootObject, Predicates.alwaysTrue(), DEFAULT_PROFILE_DEPTH);
+  }
+
+  /**
+   * Profiles the memory footprint of an object graph by path, in a single
+   * traversal of it: every object is attributed to the path through which it
+   * is reached, such as {@code java.util.HashMap->table->[]->value}, and
+   * {@link PathProfile#getHeaviestPaths(int)} tells which of them hold the
+   * most bytes. The object graph is defined as in
+   * {@link #measureBytes(Object, Predicate)}, and the total bytes of the
+   * profile are the result of that method.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * measured
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param pathDepth the maximum length of the paths of the profile; the
+   * objects that are reached through longer paths are counted in the
+   * truncated ones
+   * @return the instances and bytes of each path of the object graph
+   */
+  public static PathProfile profilePaths(Object rootObject, Predicate<Object> objectAcceptor,
+      int pathDepth) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkArgument(pathDepth >= 0, "Negative path depth");
+
+    return ObjectExplorer.exploreObject(rootObject, new PathProfile.Recorder(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor), pathDepth));
+  }
+
+  /*
+   * The visited objects are remembered only after the other checks, so that
+   * whether an object is measured does not depend on the order in which the
+   * references to it are explored (which is unspecified when in parallel).
+   */
+  private static Predicate<Edge> completePredicate(Predicate<Edge> atMostOnce,
+      Predicate<Object> objectAcceptor) {
+    return completePredicate(atMostOnce, ClassFilter.acceptingAll(), objectAcceptor);
+  }
+
+  private static Predicate<Edge> completePredicate(Predicate<Edge> atMostOnce,
+      ClassFilter classFilter, Predicate<Object> objectAcceptor) {
+    return ObjectExplorer.measuredEdges(classFilter, objectAcceptor, atMostOnce);
+  }
+
+  /**
+   * Returns the number of bytes that an object contributes to the memory
+   * footprint of an object graph: its shallow size, minus the part of it that
+   * is common to all enum constants, if it is one.
+   */
+  static long sizeOf(Object o) {
+    ShallowSizes.Record record = ShallowSizes.of(o.getClass());
+    long size = record.sizeOf(o);
+    if (record.isEnum) {
+      size -= ShallowSizes.sizeOf(DummyEnum.CONSTANT);
+    }
+    return size;
+  }
+
+  private static class MemoryMeasurerVisitor implements SplittableEdgeVisitor<Long> {
     private long memory;
-    private final Predicate<Chain> predicate;
+    private final Predicate<Edge> predicate;
 
-    MemoryMeasurerVisitor(Predicate<Chain> predicate) {
+    MemoryMeasurerVisitor(Predicate<Edge> predicate) {
       this.predicate = predicate;
     }
 
-    public Traversal visit(Chain chain) {
-      if (predicate.apply(chain)) {
-        Object o = chain.getValue();
-        memory += instrumentation.getObjectSize(o);
-        if (Enum.class.isAssignableFrom(o.getClass())) {
-          memory -= costOfBareEnumConstant;
-        }
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge)) {
+        memory += sizeOf(edge.getValue());
         return Traversal.EXPLORE;
       }
       return Traversal.SKIP;
@@ -104,5 +653,129 @@ public class MemoryMeasurer {
     public Long result() {
       return memory;
     }
+
+    public MemoryMeasurerVisitor fork() {
+      return new MemoryMeasurerVisitor(predicate);
+    }
+
+    public void merge(SplittableEdgeVisitor<Long> other) {
+      memory += ((MemoryMeasurerVisitor) other).memory;
+    }
+  }
+
+  private static class BudgetedMeasurerVisitor implements EdgeVisitor<Measurement> {
+    private long memory;
+    private final Predicate<Edge> predicate;
+    private final TraversalBudget.Tracker tracker;
+
+    BudgetedMeasurerVisitor(Predicate<Edge> predicate, TraversalBudget.Tracker tracker) {
+      this.predicate = predicate;
+      this.tracker = tracker;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge)) {
+        Object o = edge.getValue();
+        long size = sizeOf(o);
+        if (!tracker.charge(o, size)) {
+          return Traversal.STOP;
+        }
+        memory += size;
+        return Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+
+    public Measurement result() {
+      return new Measurement(memory, tracker.objects(), tracker.exhaustion());
+    }
+  }
+
+  private static class BytesMeter extends SamplingExplorer.Meter {
+    private final Predicate<Edge> predicate;
+
+    BytesMeter(Sampling sampling, Predicate<Edge> predicate) {
+      super(sampling, 1);
+      this.predicate = predicate;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge)) {
+        Object o = edge.getValue();
+        counts[0] += sizeOf(o);
+        return defer(o) ? Traversal.SKIP : Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+  }
+
+  private static class HistogramVisitor implements EdgeVisitor<ClassHistogram> {
+    private final ClassHistogram.Accumulator histogram = new ClassHistogram.Accumulator();
+    private final Predicate<Edge> predicate;
+
+    HistogramVisitor(Predicate<Edge> predicate) {
+      this.predicate = predicate;
+    }
+
+    public Traversal visit(Edge edge) {
+      if (predicate.apply(edge)) {
+        Object o = edge.getValue();
+        histogram.add(o, sizeOf(o));
+        return Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+
+    public ClassHistogram result() {
+      return histogram.toHistogram();
+    }
+  }
+
+  private static class GraphMeasurementVisitor
+      implements EdgeVisitor<GraphMeasurement>, PrimitiveCounter {
+    private long bytes;
+    private long objects;
+    // -1 to account for the root, which has no reference leading to it
+    private long references = -1;
+    private long nulls;
+    // indexed by PrimitiveKind
+    private final long[] primitives = new long[PrimitiveKind.values().length];
+    private final Predicate<Edge> predicate;
+    private final @Nullable TraversalBudget.Tracker tracker;
+
+    GraphMeasurementVisitor(Predicate<Edge> predicate, @Nullable TraversalBudget.Tracker tracker) {
+      this.predicate = predicate;
+      this.tracker = tracker;
+    }
+
+    public Traversal visit(Edge edge) {
+      // primitives are counted through countPrimitives
+      references++;
+      Object value = edge.getValue();
+      if (value == null) {
+        nulls++;
+        return Traversal.SKIP;
+      }
+      if (predicate.apply(edge)) {
+        long size = sizeOf(value);
+        if (tracker != null && !tracker.charge(value, size)) {
+          return Traversal.STOP;
+        }
+        bytes += size;
+        objects++;
+        return Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+
+    public void countPrimitives(PrimitiveKind kind, long count) {
+      primitives[kind.ordinal()] += count;
+    }
+
+    public GraphMeasurement result() {
+      return new GraphMeasurement(bytes, nulls,
+          new ObjectGraphMeasurer.Footprint(objects, references, primitives.clone()),
+          tracker == null ? null : tracker.exhaustion());
+    }
   }
 }
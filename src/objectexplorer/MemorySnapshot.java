@@ -0,0 +1,193 @@
+package objectexplorer;
+
+import objectexplorer.ObjectVisitor.Traversal;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A compact summary of the memory footprint of an object graph at some point
+ * in time: the instances and bytes of each class, and of each path from the
+ * root (up to a given depth). Two snapshots of the same root, taken at
+ * different times, are compared with {@link #diffFrom(MemorySnapshot)}, to see
+ * what grew in between.
+ *
+ * <p>A path is the class of the root, followed by a sequence of field names,
+ * and of {@code []} for the elements of an array (whichever their index), such
+ * as {@code java.util.HashMap->table->[]->value}, as in a {@link PathProfile};
+ * fields of different classes that have the same name, under the same path,
+ * share a path. Each object is attributed to the path through which the
+ * traversal first reached it, truncated to the depth of the snapshot; the
+ * instances and bytes of a path include those of all the longer paths that
+ * start with it.
+ *
+ * <p>A snapshot only keeps names and counts, not the objects of the graph.
+ *
+ * @see MemoryMeasurer#snapshot(Object, Predicate, int)
+ */
+public final class MemorySnapshot {
+  private final long timeMillis;
+  private final long totalInstances;
+  private final long totalBytes;
+  private final ImmutableMap<String, Entry> classes;
+  private final ImmutableMap<String, Entry> paths;
+
+  MemorySnapshot(long timeMillis, long totalInstances, long totalBytes,
+      ImmutableMap<String, Entry> classes, ImmutableMap<String, Entry> paths) {
+    this.timeMillis = timeMillis;
+    this.totalInstances = totalInstances;
+    this.totalBytes = totalBytes;
+    this.classes = classes;
+    this.paths = paths;
+  }
+
+  /**
+   * Returns the time when this snapshot was taken, in milliseconds since the
+   * epoch.
+   */
+  public long getTimeMillis() {
+    return timeMillis;
+  }
+
+  /**
+   * Returns the number of objects of the object graph.
+   */
+  public long getTotalInstances() {
+    return totalInstances;
+  }
+
+  /**
+   * Returns the memory footprint, in bytes, of the object graph.
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns the instances and bytes of each class, by class name, largest
+   * first.
+   */
+  public ImmutableMap<String, Entry> getClasses() {
+    return classes;
+  }
+
+  /**
+   * Returns the instances and bytes of each path, in the order the paths
+   * were first reached (so a path always comes after its prefixes).
+   */
+  public ImmutableMap<String, Entry> getPaths() {
+    return paths;
+  }
+
+  /**
+   * Compares this snapshot with an earlier one (of the same root).
+   */
+  public SnapshotDiff diffFrom(MemorySnapshot earlier) {
+    Preconditions.checkNotNull(earlier);
+    return new SnapshotDiff(earlier, this);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("TimeMillis", timeMillis)
+    .add("TotalInstances", totalInstances)
+    .add("TotalBytes", totalBytes)
+    .add("Classes", classes.size())
+    .add("Paths", paths.size())
+    .toString();
+  }
+
+  /**
+   * The instances and bytes of a class or a path.
+   */
+  public static final class Entry {
+    private final String key;
+    private final long instances;
+    private final long bytes;
+
+    Entry(String key, long instances, long bytes) {
+      this.key = key;
+      this.instances = instances;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns the name of the class, or the path.
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Returns the number of instances.
+     */
+    public long getInstances() {
+      return instances;
+    }
+
+    /**
+     * Returns the number of bytes.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Key", key)
+      .add("Instances", instances)
+      .add("Bytes", bytes)
+      .toString();
+    }
+  }
+
+  /**
+   * Takes a snapshot while the object graph is explored: the classes are
+   * counted by a {@link ClassHistogram.Accumulator}, and the paths in a
+   * {@link PathTrie}.
+   */
+  static final class Recorder implements EdgeVisitor<MemorySnapshot> {
+    private final Predicate<Edge> filter;
+    private final long timeMillis = System.currentTimeMillis();
+    private final ClassHistogram.Accumulator histogram = new ClassHistogram.Accumulator();
+    private final PathTrie trie;
+
+    /**
+     * @param filter decides which edges lead to objects of the object graph
+     * @param maxDepth the maximum length of the recorded paths
+     */
+    Recorder(Predicate<Edge> filter, int maxDepth) {
+      this.filter = filter;
+      this.trie = new PathTrie(maxDepth);
+    }
+
+    public Traversal visit(Edge edge) {
+      if (!filter.apply(edge)) {
+        return Traversal.SKIP;
+      }
+      Object o = edge.getValue();
+      long size = MemoryMeasurer.sizeOf(o);
+      trie.add(edge, size);
+      histogram.add(o, size);
+      return Traversal.EXPLORE;
+    }
+
+    public MemorySnapshot result() {
+      ClassHistogram classHistogram = histogram.toHistogram();
+      ImmutableMap.Builder<String, Entry> classes = ImmutableMap.builder();
+      for (ClassHistogram.Entry entry : classHistogram.getEntries()) {
+        String name = entry.getTypeName();
+        classes.put(name, new Entry(name, entry.getInstances(), entry.getBytes()));
+      }
+      ImmutableMap.Builder<String, Entry> paths = ImmutableMap.builder();
+      for (PathTrie.Node node : trie.complete()) {
+        paths.put(node.name, new Entry(node.name, node.totalInstances, node.totalBytes));
+      }
+      return new MemorySnapshot(timeMillis, classHistogram.getTotalInstances(),
+          classHistogram.getTotalBytes(), classes.build(), paths.build());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * The memory footprint of several object graphs (one per root) that may share
+ * objects: how many bytes each root reaches exclusively, how many it shares
+ * with other roots, and how many all of them take together, where each shared
+ * object is counted once.
+ *
+ * @param <K> the type of the keys that identify the roots
+ * @see MemoryMeasurer#measureRoots(java.util.Map, com.google.common.base.Predicate)
+ */
+public final class MultiRootMeasurement<K> {
+  private final ImmutableMap<K, RootBytes> roots;
+  private final long unionBytes;
+  private final long sharedBytes;
+
+  MultiRootMeasurement(ImmutableMap<K, RootBytes> roots, long unionBytes, long sharedBytes) {
+    this.roots = roots;
+    this.unionBytes = unionBytes;
+    this.sharedBytes = sharedBytes;
+  }
+
+  /**
+   * Returns the bytes of each root, in the iteration order of the measured
+   * roots.
+   */
+  public ImmutableMap<K, RootBytes> getRoots() {
+    return roots;
+  }
+
+  /**
+   * Returns the bytes of the root with the given key, or {@code null} if no
+   * root has that key.
+   */
+  public @Nullable RootBytes get(K key) {
+    return roots.get(key);
+  }
+
+  /**
+   * Returns the memory footprint, in bytes, of the union of the object graphs,
+   * i.e. of all the objects that are reachable from any root.
+   */
+  public long getUnionBytes() {
+    return unionBytes;
+  }
+
+  /**
+   * Returns the bytes of the objects that are reachable from more than one
+   * root (each counted once).
+   */
+  public long getSharedBytes() {
+    return sharedBytes;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("UnionBytes", unionBytes)
+    .add("SharedBytes", sharedBytes)
+    .add("Roots", roots)
+    .toString();
+  }
+
+  /**
+   * The bytes that a single root reaches.
+   */
+  public static final class RootBytes {
+    private final long exclusiveBytes;
+    private final long sharedBytes;
+
+    RootBytes(long exclusiveBytes, long sharedBytes) {
+      this.exclusiveBytes = exclusiveBytes;
+      this.sharedBytes = sharedBytes;
+    }
+
+    /**
+     * Returns the bytes of the objects that are reachable from this root
+     * only.
+     */
+    public long getExclusiveBytes() {
+      return exclusiveBytes;
+    }
+
+    /**
+     * Returns the bytes of the objects that are reachable from this root, and
+     * from some other root too.
+     */
+    public long getSharedBytes() {
+      return sharedBytes;
+    }
+
+    /**
+     * Returns the bytes of all the objects that are reachable from this root,
+     * which is what {@link MemoryMeasurer#measureBytes(Object,
+     * com.google.common.base.Predicate)} would measure for it alone.
+     */
+    public long getTotalBytes() {
+      return exclusiveBytes + sharedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("ExclusiveBytes", exclusiveBytes)
+      .add("SharedBytes", sharedBytes)
+      .toString();
+    }
+  }
+}
@@ -1,24 +1,12 @@
 package objectexplorer;
 
 import objectexplorer.ObjectVisitor.Traversal;
-import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Lists;
-
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Array;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.ArrayDeque;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.EnumSet;
-import java.util.IdentityHashMap;
-import java.util.List;
-import java.util.Set;
+import com.google.common.base.Predicates;
 
-import javax.annotation.Nonnull;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A depth-first object graph explorer. The traversal starts at a root (an
@@ -82,101 +70,302 @@ public class ObjectExplorer {
    */
   public static <T> T exploreObject(Object rootObject,
       ObjectVisitor<T> visitor, EnumSet<Feature> features) {
-    Deque<Chain> stack = new ArrayDeque<Chain>(32);
-    if (rootObject != null) stack.push(Chain.root(rootObject));
-
-    while (!stack.isEmpty()) {
-      Chain chain = stack.pop();
-      //the only place where the return value of visit() is considered
-      Traversal traversal = visitor.visit(chain);
-      switch (traversal) {
-        case SKIP: continue;
-        case EXPLORE: break;
-      }
+    return exploreObject(rootObject, new ChainVisitorAdapter<T>(visitor), features);
+  }
 
-      //only nonnull values pushed in the stack
-      @Nonnull Object value = chain.getValue();
-      Class<?> valueClass = value.getClass();
-      if (valueClass.isArray()) {
-        boolean isPrimitive = valueClass.getComponentType().isPrimitive();
-        for (int i = Array.getLength(value) - 1; i >= 0; i--) {
-          Object childValue = Array.get(value, i);
-          if (isPrimitive) {
-            if (features.contains(Feature.VISIT_PRIMITIVES))
-              visitor.visit(chain.appendArrayIndex(i, childValue));
-            continue;
-          }
-          if (childValue == null) {
-            if (features.contains(Feature.VISIT_NULL))
-              visitor.visit(chain.appendArrayIndex(i, childValue));
-            continue;
-          }
-          stack.push(chain.appendArrayIndex(i, childValue));
-        }
-      } else {
-        for (Field field : getAllFields(value)) {
-          if (Modifier.isStatic(field.getModifiers())) continue;
-          Object childValue = null;
-          try {
-            childValue = field.get(value);
-          } catch (Exception e) {
-            throw new AssertionError(e);
-          }
-          if (childValue == null) {
-            if (features.contains(Feature.VISIT_NULL))
-              visitor.visit(chain.appendField(field, childValue));
-            continue;
-          }
-          boolean isPrimitive = field.getType().isPrimitive();
-          Chain extendedChain = chain.appendField(field, childValue);
-          if (isPrimitive) {
-            if (features.contains(Feature.VISIT_PRIMITIVES))
-              visitor.visit(extendedChain);
-            continue;
-          } else {
-            stack.push(extendedChain);
-          }
-        }
-      }
+  /**
+   * Explores an object graph (defined by a root object and whatever is
+   * reachable through it, following non-static fields) while using an
+   * {@link EdgeVisitor} to both control the traversal and return a value.
+   *
+   * <p>Equivalent to {@code exploreObject(rootObject, visitor,
+   * EnumSet.noneOf(Feature.class))}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge and
+   * decides whether to continue exploration of that edge, and constructs a
+   * return value at the end of the exploration
+   * @return whatever value is returned by the visitor at the end of the
+   * traversal
+   * @see EdgeVisitor
+   */
+  public static <T> T exploreObject(Object rootObject, EdgeVisitor<T> visitor) {
+    return exploreObject(rootObject, visitor, EnumSet.noneOf(Feature.class));
+  }
+
+  /**
+   * Explores an object graph (defined by a root object and whatever is
+   * reachable through it, following non-static fields) while using an
+   * {@link EdgeVisitor} to both control the traversal and return a value.
+   *
+   * <p>This behaves like {@link #exploreObject(Object, ObjectVisitor, EnumSet)},
+   * except that no {@link Chain} is created for the explored references, unless
+   * the visitor asks for one through {@link Edge#toChain()}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @return whatever value is returned by the visitor at the end of the traversal
+   * @see EdgeVisitor
+   */
+  public static <T> T exploreObject(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features) {
+    if (rootObject != null) {
+      new ObjectWalker(visitor, features).walk(rootObject);
     }
     return visitor.result();
   }
 
-  public static class AtMostOncePredicate implements Predicate<Chain> {
-    private final Set<Object> interner = Collections.newSetFromMap(
-        new IdentityHashMap<Object, Boolean>());
+  /**
+   * Explores an object graph as
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet)} does, but following
+   * only the fields that the given {@link FieldFilter} accepts.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param fieldFilter the filter of the fields to follow
+   * @return whatever value is returned by the visitor at the end of the traversal
+   */
+  public static <T> T exploreObject(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features, FieldFilter fieldFilter) {
+    Preconditions.checkNotNull(fieldFilter, "fieldFilter");
+    if (rootObject != null) {
+      new ObjectWalker(visitor, features, null, null, fieldFilter).walk(rootObject);
+    }
+    return visitor.result();
+  }
 
-    public boolean apply(Chain chain) {
-      Object o = chain.getValue();
-      return o instanceof Class<?> || interner.add(o);
+  /**
+   * Explores an object graph as
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet)} does, and adds the
+   * metrics of the traversal to the given {@link TraversalStats}.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * EdgeVisitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param stats where the metrics of the traversal are added
+   * @return whatever value is returned by the visitor at the end of the traversal
+   */
+  public static <T> T exploreObject(Object rootObject,
+      EdgeVisitor<T> visitor, EnumSet<Feature> features, TraversalStats stats) {
+    Preconditions.checkNotNull(stats, "stats");
+    long start = System.nanoTime();
+    if (rootObject != null) {
+      new ObjectWalker(visitor, features, null, stats).walk(rootObject);
     }
+    T result = visitor.result();
+    stats.wallNanos += System.nanoTime() - start;
+    return result;
   }
 
-  static final Predicate<Chain> notEnumFieldsOrClasses = new Predicate<Chain>(){
+  /**
+   * Explores an object graph in parallel, using the threads of a newly created
+   * {@link ForkJoinPool} (with one thread per available processor), which is
+   * shut down after the exploration.
+   *
+   * <p>Equivalent to {@code exploreObjectInParallel(rootObject, visitor,
+   * features, pool)} with the pool described above.
+   */
+  public static <T> T exploreObjectInParallel(Object rootObject,
+      SplittableEdgeVisitor<T> visitor, EnumSet<Feature> features) {
+    ForkJoinPool pool = new ForkJoinPool();
+    try {
+      return exploreObjectInParallel(rootObject, visitor, features, pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Explores an object graph (defined by a root object and whatever is
+   * reachable through it, following non-static fields) in parallel, using the
+   * threads of the given pool, while using a {@link SplittableEdgeVisitor} to
+   * both control the traversal and return a value.
+   *
+   * <p>The given visitor visits the root object, and is then {@linkplain
+   * SplittableEdgeVisitor#fork() forked} whenever a part of the object graph
+   * is handed to another thread (possibly several times in a row, from forked
+   * visitors). Forked visitors may thus be called concurrently; each of them is
+   * only used by one thread at a time, and all of them are finally
+   * {@linkplain SplittableEdgeVisitor#merge(SplittableEdgeVisitor) merged} back
+   * into the given visitor, before its result is returned. Any state that the
+   * visitors share, such as the set of visited objects, must be thread-safe.
+   *
+   * <p>The visiting order is unspecified, and unlike
+   * {@link #exploreObject(Object, EdgeVisitor, EnumSet)}, a single traversal
+   * path is not necessarily visited in a depth-first manner.
+   *
+   * @param <T> the type of the value obtained (after the traversal) by the
+   * visitor
+   * @param rootObject an object to be recursively explored
+   * @param visitor a visitor that is notified for each explored edge
+   * and decides whether to continue exploration of that edge, and constructs
+   * a return value at the end of the exploration
+   * @param features a set of desired features that the object exploration should have
+   * @param pool the pool whose threads perform the exploration
+   * @return whatever value is returned by the visitor at the end of the traversal
+   * @see SplittableEdgeVisitor
+   */
+  public static <T> T exploreObjectInParallel(Object rootObject,
+      SplittableEdgeVisitor<T> visitor, EnumSet<Feature> features, ForkJoinPool pool) {
+    if (rootObject != null) {
+      ParallelWalker.walk(rootObject, visitor, features, pool);
+    }
+    return visitor.result();
+  }
+
+  /**
+   * Adapts an {@link ObjectVisitor} to the traversal of {@link ObjectWalker},
+   * handing it the chain of each edge. The traversal keeps one frame (with a
+   * cursor) per object on the current path, rather than a pending chain per
+   * unexplored child, so its memory grows with the depth of the object graph,
+   * not with the size of its largest array.
+   */
+  private static final class ChainVisitorAdapter<T> implements EdgeVisitor<T> {
+    private final ObjectVisitor<T> visitor;
+
+    ChainVisitorAdapter(ObjectVisitor<T> visitor) {
+      this.visitor = visitor;
+    }
+
+    public Traversal visit(Edge edge) {
+      return visitor.visit(edge.toChain());
+    }
+
+    public T result() {
+      return visitor.result();
+    }
+  }
+
+  /**
+   * A predicate that accepts each object (apart from {@code Class} objects,
+   * which are always accepted) only the first time it is encountered.
+   * Visited objects are remembered in an {@link IdentitySet}.
+   */
+  public static class AtMostOncePredicate implements Predicate<Chain> {
+    private final IdentitySet interner;
+
+    /**
+     * Creates a predicate that has not encountered any object yet.
+     */
+    public AtMostOncePredicate() {
+      this.interner = new IdentitySet();
+    }
+
+    /**
+     * Creates a predicate that has not encountered any object yet, and which
+     * expects to encounter about {@code expectedObjects} distinct objects.
+     */
+    public AtMostOncePredicate(int expectedObjects) {
+      this.interner = new IdentitySet(expectedObjects);
+    }
+
     public boolean apply(Chain chain) {
-      return !(Enum.class.isAssignableFrom(chain.getValueType())
-          || chain.getValue() instanceof Class<?>);
+      return firstTime(chain.getValue());
     }
-  };
 
-  static final Function<Chain, Object> chainToObject =
-    new Function<Chain, Object>() {
-    public Object apply(Chain chain) {
-      return chain.getValue();
+    boolean firstTime(Object o) {
+      return o == null || o instanceof Class<?> || interner.add(o);
     }
-  };
-
-  private static Iterable<Field> getAllFields(Object o) {
-    List<Field> fields = Lists.newArrayListWithCapacity(8);
-    Class<?> clazz = o.getClass();
-    while (clazz != null) {
-      fields.addAll(Arrays.asList(clazz.getDeclaredFields()));
-      clazz = clazz.getSuperclass();
+
+    /**
+     * Returns the set of the objects that have been encountered so far.
+     */
+    public IdentitySet visited() {
+      return interner;
     }
+  }
+
+  static Predicate<Edge> atMostOnceEdges() {
+    return atMostOnceEdges(new AtMostOncePredicate());
+  }
+
+  static Predicate<Edge> atMostOnceEdges(final AtMostOncePredicate atMostOnce) {
+    return new Predicate<Edge>() {
+      public boolean apply(Edge edge) {
+        return atMostOnce.firstTime(edge.getValue());
+      }
+    };
+  }
 
-    //all together so there is only one security check
-    AccessibleObject.setAccessible(fields.toArray(new AccessibleObject[fields.size()]), true);
-    return fields;
+  static Predicate<Edge> atMostOnceEdgesConcurrently() {
+    final ConcurrentIdentitySet visited = new ConcurrentIdentitySet();
+    return new Predicate<Edge>() {
+      public boolean apply(Edge edge) {
+        Object o = edge.getValue();
+        return o == null || o instanceof Class<?> || visited.add(o);
+      }
+    };
+  }
+
+  /**
+   * Returns the predicate of the edges to the objects that a measurement
+   * counts: not {@code null}, not through fields (or arrays) of {@code enum}
+   * types, of classes that the class filter accepts (which excludes
+   * {@code Class} objects), that the object acceptor accepts, and seen for
+   * the first time (in this order, so that the visited objects are only
+   * remembered after the other checks).
+   *
+   * <p>This is a single predicate rather than a chain of them, so that
+   * checking an edge takes no more than a few direct calls: the enum and class
+   * checks are decided once per field and class (see
+   * {@link Edge#isEnumTyped()} and {@link ClassFilter#accepts(Class)}), and
+   * the object acceptor is not even called if it is
+   * {@link Predicates#alwaysTrue()}. It is thread-safe if the object acceptor
+   * and {@code atMostOnce} are.
+   */
+  static Predicate<Edge> measuredEdges(ClassFilter classFilter,
+      Predicate<Object> objectAcceptor, Predicate<Edge> atMostOnce) {
+    return new MeasuredEdges(classFilter, objectAcceptor,
+        Preconditions.checkNotNull(atMostOnce, "atMostOnce"));
+  }
+
+  /**
+   * Returns the predicate of the edges to the objects that a measurement
+   * counts, as {@link #measuredEdges(ClassFilter, Predicate, Predicate)} does,
+   * for the traversals that keep track of the visited objects themselves.
+   */
+  static Predicate<Edge> measuredEdges(ClassFilter classFilter,
+      Predicate<Object> objectAcceptor) {
+    return new MeasuredEdges(classFilter, objectAcceptor, null);
+  }
+
+  private static final class MeasuredEdges implements Predicate<Edge> {
+    private final ClassFilter classFilter;
+    private final Predicate<Object> objectAcceptor; // null if it accepts everything
+    private final Predicate<Edge> atMostOnce; // null if not tracked here
+
+    MeasuredEdges(ClassFilter classFilter, Predicate<Object> objectAcceptor,
+        Predicate<Edge> atMostOnce) {
+      this.classFilter = Preconditions.checkNotNull(classFilter, "classFilter");
+      this.objectAcceptor = objectAcceptor == Predicates.alwaysTrue()
+          ? null : Preconditions.checkNotNull(objectAcceptor, "predicate");
+      this.atMostOnce = atMostOnce;
+    }
+
+    public boolean apply(Edge edge) {
+      Object value = edge.getValue();
+      if (value == null || edge.isEnumTyped() || !classFilter.accepts(value.getClass())) {
+        return false;
+      }
+      if (objectAcceptor != null && !objectAcceptor.apply(value)) return false;
+      return atMostOnce == null || atMostOnce.apply(edge);
+    }
   }
 
   /**
@@ -1,17 +1,19 @@
 package objectexplorer;
 
 import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectVisitor.Traversal;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
+import com.google.common.primitives.Ints;
 
 import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A tool that can qualitatively measure the footprint
@@ -23,9 +25,11 @@ public class ObjectGraphMeasurer {
    * The footprint of an object graph.
    */
   public static class Footprint {
-    private final int objects;
-    private final int references;
-    private final ImmutableMultiset<Class<?>> primitives;
+    private final long objects;
+    private final long references;
+    // indexed by PrimitiveKind
+    private final long[] primitives;
+    private volatile ImmutableMultiset<Class<?>> primitiveMultiset;
 
     private static final ImmutableSet<Class<?>> primitiveTypes = ImmutableSet.<Class<?>>of(
         boolean.class, byte.class, char.class, short.class,
@@ -40,36 +44,123 @@ public class ObjectGraphMeasurer {
      * @param primitives the number of primitives (represented by the
      * respective primitive classes, e.g. {@code int.class} etc)
      */
-    public Footprint(int objects, int references, Multiset<Class<?>> primitives) {
+    public Footprint(long objects, long references, Multiset<Class<?>> primitives) {
+      this(objects, references, countsOf(primitives));
+    }
+
+    /**
+     * Constructs a Footprint from the number of primitives of each
+     * {@link PrimitiveKind}, indexed by its ordinal (the array is not copied).
+     */
+    Footprint(long objects, long references, long[] primitives) {
       Preconditions.checkArgument(objects >= 0, "Negative number of objects");
       Preconditions.checkArgument(references >= 0, "Negative number of references");
-      Preconditions.checkArgument(primitiveTypes.containsAll(primitives.elementSet()),
-      "Unexpected primitive type");
       this.objects = objects;
       this.references = references;
-      this.primitives = ImmutableMultiset.copyOf(primitives);
+      this.primitives = primitives;
+    }
+
+    private static long[] countsOf(Multiset<Class<?>> primitives) {
+      Preconditions.checkArgument(primitiveTypes.containsAll(primitives.elementSet()),
+      "Unexpected primitive type");
+      long[] counts = new long[PrimitiveKind.values().length];
+      for (PrimitiveKind kind : PrimitiveKind.values()) {
+        counts[kind.ordinal()] = primitives.count(kind.type);
+      }
+      return counts;
     }
 
     /**
      * Returns the number of objects of this footprint.
      */
-    public int getObjects() {
+    public long getObjects() {
       return objects;
     }
 
     /**
      * Returns the number of references of this footprint.
      */
-    public int getReferences() {
+    public long getReferences() {
       return references;
     }
 
+    /**
+     * Returns the number of primitives of the given type (e.g.
+     * {@code int.class}) of this footprint.
+     *
+     * @throws IllegalArgumentException if {@code primitiveType} is not a
+     * primitive type
+     */
+    public long getPrimitiveCount(Class<?> primitiveType) {
+      return primitives[PrimitiveKind.of(primitiveType).ordinal()];
+    }
+
     /**
      * Returns the number of primitives of this footprint
      * (represented by the respective primitive classes,
-     * {@literal e.g.} {@code int.class} etc).
+     * {@literal e.g.} {@code int.class} etc). A {@code Multiset} cannot count
+     * beyond {@link Integer#MAX_VALUE}, so larger counts are capped at that;
+     * {@link #getPrimitiveCount(Class)} gives the exact counts.
      */
     public ImmutableMultiset<Class<?>> getPrimitives() {
+      ImmutableMultiset<Class<?>> multiset = primitiveMultiset;
+      if (multiset == null) {
+        ImmutableMultiset.Builder<Class<?>> builder = ImmutableMultiset.builder();
+        for (PrimitiveKind kind : PrimitiveKind.values()) {
+          builder.addCopies(kind.type, Ints.saturatedCast(primitives[kind.ordinal()]));
+        }
+        primitiveMultiset = multiset = builder.build();
+      }
+      return multiset;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Objects", objects)
+      .add("References", references)
+      .add("Primitives", getPrimitives())
+      .toString();
+    }
+  }
+
+  /**
+   * An estimate of the footprint of an object graph.
+   *
+   * @see ObjectGraphMeasurer#estimate(Object, Predicate, Sampling)
+   */
+  public static class FootprintEstimate {
+    private final Estimate objects;
+    private final Estimate references;
+    private final ImmutableMap<Class<?>, Estimate> primitives;
+
+    FootprintEstimate(Estimate objects, Estimate references,
+        ImmutableMap<Class<?>, Estimate> primitives) {
+      this.objects = objects;
+      this.references = references;
+      this.primitives = primitives;
+    }
+
+    /**
+     * Returns the estimated number of objects.
+     */
+    public Estimate getObjects() {
+      return objects;
+    }
+
+    /**
+     * Returns the estimated number of references.
+     */
+    public Estimate getReferences() {
+      return references;
+    }
+
+    /**
+     * Returns the estimated number of primitives of each type that occurs in
+     * the object graph (represented by the respective primitive classes,
+     * {@literal e.g.} {@code int.class} etc).
+     */
+    public ImmutableMap<Class<?>, Estimate> getPrimitives() {
       return primitives;
     }
 
@@ -118,43 +209,242 @@ public class ObjectGraphMeasurer {
   public static Footprint measure(Object rootObject, Predicate<Object> objectAcceptor) {
     Preconditions.checkNotNull(objectAcceptor, "predicate");
 
-    Predicate<Chain> completePredicate = Predicates.and(ImmutableList.of(
-        ObjectExplorer.notEnumFieldsOrClasses,
-        Predicates.compose(objectAcceptor, ObjectExplorer.chainToObject),
-        new ObjectExplorer.AtMostOncePredicate()
-    ));
+    return ObjectExplorer.exploreObject(rootObject, new ObjectGraphVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor)),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL));
+  }
+
+  /**
+   * Measures the footprint of the specified object graph, as
+   * {@link #measure(Object, Predicate)} does, but leaving out the objects of
+   * the classes that the given {@link ClassFilter} rejects, and the fields
+   * that the given {@link FieldFilter} rejects (along with whatever is only
+   * reachable through them). The filters decide once per class (and field),
+   * so they should be preferred to an object predicate whenever the decision
+   * does not depend on the object itself.
+   *
+   * @param rootObject the root object of the object graph
+   * @param classFilter the filter of the classes of the objects to measure
+   * @param fieldFilter the filter of the fields to follow
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the footprint), or {@code false}
+   * to forbid the traversal to traverse the given object
+   * @return the footprint of the object graph
+   */
+  public static Footprint measure(Object rootObject, ClassFilter classFilter,
+      FieldFilter fieldFilter, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    return ObjectExplorer.exploreObject(rootObject, new ObjectGraphVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(), classFilter, objectAcceptor)),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL), fieldFilter);
+  }
+
+  /**
+   * Measures the footprint of the specified object graph, as
+   * {@link #measure(Object, Predicate)} does, and adds the metrics of the
+   * traversal (including the size of its set of visited objects) to the given
+   * {@link TraversalStats}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the footprint), or {@code false}
+   * to forbid the traversal to traverse the given object
+   * @param stats where the metrics of the traversal are added
+   * @return the footprint of the object graph
+   */
+  public static Footprint measure(Object rootObject, Predicate<Object> objectAcceptor,
+      TraversalStats stats) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(stats, "stats");
+
+    ObjectExplorer.AtMostOncePredicate atMostOnce = new ObjectExplorer.AtMostOncePredicate();
+    Footprint footprint = ObjectExplorer.exploreObject(rootObject, new ObjectGraphVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdges(atMostOnce), objectAcceptor)),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL), stats);
+    stats.recordVisitedSetSize(atMostOnce.visited().size());
+    return footprint;
+  }
+
+  /**
+   * Measures the footprint of the specified object graph, exploring it in
+   * parallel. The result is the same as that of {@link #measure(Object)}.
+   *
+   * <p>Equivalent to {@code measureInParallel(rootObject,
+   * Predicates.alwaysTrue())}.
+   *
+   * @param rootObject the root object of the object graph
+   * @return the footprint of the object graph
+   */
+  public static Footprint measureInParallel(Object rootObject) {
+    return measureInParallel(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Measures the footprint of the specified object graph, exploring it in
+   * parallel with the threads of a newly created {@link ForkJoinPool}. The
+   * result is the same as that of {@link #measure(Object, Predicate)}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the footprint), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the footprint of the object graph
+   * @see ObjectExplorer#exploreObjectInParallel(Object, SplittableEdgeVisitor, EnumSet)
+   */
+  public static Footprint measureInParallel(Object rootObject, Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
 
-    return ObjectExplorer.exploreObject(rootObject, new ObjectGraphVisitor(completePredicate),
+    return ObjectExplorer.exploreObjectInParallel(rootObject, new ObjectGraphVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdgesConcurrently(), objectAcceptor)),
         EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL));
   }
 
-  private static class ObjectGraphVisitor implements ObjectVisitor<Footprint> {
-    private int objects;
+  /**
+   * Measures the footprint of the specified object graph, exploring it in
+   * parallel with the threads of the given pool. The result is the same as
+   * that of {@link #measure(Object, Predicate)}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a thread-safe predicate that returns {@code true}
+   * for objects to be explored (and treated as part of the footprint), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @param pool the pool whose threads explore the object graph
+   * @return the footprint of the object graph
+   * @see ObjectExplorer#exploreObjectInParallel(Object, SplittableEdgeVisitor,
+   * EnumSet, ForkJoinPool)
+   */
+  public static Footprint measureInParallel(Object rootObject, Predicate<Object> objectAcceptor,
+      ForkJoinPool pool) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(pool, "pool");
+
+    return ObjectExplorer.exploreObjectInParallel(rootObject, new ObjectGraphVisitor(
+        completePredicate(ObjectExplorer.atMostOnceEdgesConcurrently(), objectAcceptor)),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL), pool);
+  }
+
+  /**
+   * Estimates the footprint of the specified object graph, as
+   * {@link #measure(Object, Predicate)} measures it, but only exploring a
+   * sample of the elements of large reference arrays (such as the tables of
+   * large hash maps), as specified by the given {@link Sampling}.
+   *
+   * @param rootObject the root object of the object graph
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the footprint), or {@code false}
+   * to forbid the traversal to traverse the given object
+   * @param sampling which arrays are sampled, and how much
+   * @return the estimated footprint of the object graph
+   */
+  public static FootprintEstimate estimate(Object rootObject, Predicate<Object> objectAcceptor,
+      Sampling sampling) {
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+    Preconditions.checkNotNull(sampling, "sampling");
+
+    Estimate[] estimates = SamplingExplorer.explore(rootObject, new FootprintMeter(sampling,
+        completePredicate(ObjectExplorer.atMostOnceEdges(), objectAcceptor)),
+        EnumSet.of(Feature.VISIT_PRIMITIVES, Feature.VISIT_NULL), sampling);
+    ImmutableMap.Builder<Class<?>, Estimate> primitives = ImmutableMap.builder();
+    for (PrimitiveKind kind : PrimitiveKind.values()) {
+      Estimate primitive = estimates[FootprintMeter.PRIMITIVES + kind.ordinal()];
+      if (primitive.getValue() > 0) {
+        primitives.put(kind.type, primitive);
+      }
+    }
+    return new FootprintEstimate(estimates[FootprintMeter.OBJECTS],
+        estimates[FootprintMeter.REFERENCES], primitives.build());
+  }
+
+  private static Predicate<Edge> completePredicate(Predicate<Edge> atMostOnce,
+      Predicate<Object> objectAcceptor) {
+    return completePredicate(atMostOnce, ClassFilter.acceptingAll(), objectAcceptor);
+  }
+
+  private static Predicate<Edge> completePredicate(Predicate<Edge> atMostOnce,
+      ClassFilter classFilter, Predicate<Object> objectAcceptor) {
+    return ObjectExplorer.measuredEdges(classFilter, objectAcceptor, atMostOnce);
+  }
+
+  private static class ObjectGraphVisitor
+      implements SplittableEdgeVisitor<Footprint>, PrimitiveCounter {
+    private long objects;
     // -1 to account for the root, which has no reference leading to it
-    private int references = -1;
-    private final Multiset<Class<?>> primitives = HashMultiset.create();
-    private final Predicate<Chain> predicate;
+    private long references = -1;
+    // indexed by PrimitiveKind
+    private final long[] primitives = new long[PrimitiveKind.values().length];
+    private final Predicate<Edge> predicate;
 
-    ObjectGraphVisitor(Predicate<Chain> predicate) {
+    ObjectGraphVisitor(Predicate<Edge> predicate) {
       this.predicate = predicate;
     }
 
-    public Traversal visit(Chain chain) {
-      if (chain.isPrimitive()) {
-        primitives.add(chain.getValueType());
-        return Traversal.SKIP;
-      } else {
-        references++;
-      }
-      if (predicate.apply(chain) && chain.getValue() != null) {
+    private ObjectGraphVisitor(Predicate<Edge> predicate, long references) {
+      this.predicate = predicate;
+      this.references = references;
+    }
+
+    public Traversal visit(Edge edge) {
+      // primitives are counted through countPrimitives
+      references++;
+      if (predicate.apply(edge) && edge.getValue() != null) {
         objects++;
         return Traversal.EXPLORE;
       }
       return Traversal.SKIP;
     }
 
+    public void countPrimitives(PrimitiveKind kind, long count) {
+      primitives[kind.ordinal()] += count;
+    }
+
+    public ObjectGraphVisitor fork() {
+      // a forked visitor never visits the root
+      return new ObjectGraphVisitor(predicate, 0);
+    }
+
+    public void merge(SplittableEdgeVisitor<Footprint> other) {
+      ObjectGraphVisitor that = (ObjectGraphVisitor) other;
+      objects += that.objects;
+      references += that.references;
+      for (int k = 0; k < primitives.length; k++) {
+        primitives[k] += that.primitives[k];
+      }
+    }
+
     public Footprint result() {
-      return new Footprint(objects, references, ImmutableMultiset.copyOf(primitives));
+      return new Footprint(objects, references, primitives.clone());
+    }
+  }
+
+  private static class FootprintMeter extends SamplingExplorer.Meter
+      implements PrimitiveCounter {
+    static final int OBJECTS = 0;
+    static final int REFERENCES = 1;
+    static final int PRIMITIVES = 2;
+
+    private final Predicate<Edge> predicate;
+
+    FootprintMeter(Sampling sampling, Predicate<Edge> predicate) {
+      super(sampling, PRIMITIVES + PrimitiveKind.values().length);
+      this.predicate = predicate;
+    }
+
+    public Traversal visit(Edge edge) {
+      // the root has no reference leading to it
+      if (edge.hasParent()) {
+        counts[REFERENCES]++;
+      }
+      Object value = edge.getValue();
+      if (predicate.apply(edge) && value != null) {
+        counts[OBJECTS]++;
+        return defer(value) ? Traversal.SKIP : Traversal.EXPLORE;
+      }
+      return Traversal.SKIP;
+    }
+
+    public void countPrimitives(PrimitiveKind kind, long count) {
+      counts[PRIMITIVES + kind.ordinal()] += count;
     }
   }
 }
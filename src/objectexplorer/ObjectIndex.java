@@ -0,0 +1,123 @@
+package objectexplorer;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+
+/**
+ * Numbers distinct objects (compared by identity) with consecutive ints,
+ * starting from zero, in the order they are added. This is what lets an object
+ * graph be recorded as a compact, int-indexed structure.
+ *
+ * <p>The objects are kept in an array indexed by their numbers, and the hash
+ * table (open addressing with linear probing over
+ * {@link System#identityHashCode(Object)}, as in {@link IdentitySet}) only
+ * holds ints: the number of the object in each slot, plus one.
+ */
+final class ObjectIndex {
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  private Object[] objects;
+  private int[] table;
+  private int size;
+  private int threshold;
+
+  ObjectIndex() {
+    this(MINIMUM_CAPACITY / 2);
+  }
+
+  ObjectIndex(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size");
+    int capacity = MINIMUM_CAPACITY;
+    while (capacity < MAXIMUM_CAPACITY && thresholdOf(capacity) < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+    objects = new Object[threshold + 1];
+  }
+
+  /**
+   * Numbers the given object, unless it has already been numbered.
+   *
+   * @return the (new) number of the object if it was added, or
+   * {@code ~number} (a negative value) if it had already been added
+   */
+  int add(Object o) {
+    Preconditions.checkNotNull(o);
+    int[] tab = table;
+    int mask = tab.length - 1;
+    for (int i = indexOf(o, mask); ; i = (i + 1) & mask) {
+      int slot = tab[i];
+      if (slot == 0) {
+        int number = size++;
+        objects[number] = o;
+        tab[i] = number + 1;
+        if (size > threshold) {
+          resize();
+        }
+        return number;
+      }
+      if (objects[slot - 1] == o) {
+        return ~(slot - 1);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of the given object, or -1 if it has not been added.
+   */
+  int numberOf(Object o) {
+    int[] tab = table;
+    int mask = tab.length - 1;
+    for (int i = indexOf(o, mask); ; i = (i + 1) & mask) {
+      int slot = tab[i];
+      if (slot == 0) return -1;
+      if (objects[slot - 1] == o) return slot - 1;
+    }
+  }
+
+  /**
+   * Returns the object with the given number.
+   */
+  Object get(int number) {
+    Preconditions.checkElementIndex(number, size);
+    return objects[number];
+  }
+
+  /**
+   * Returns the number of objects that have been added.
+   */
+  int size() {
+    return size;
+  }
+
+  private void resize() {
+    Preconditions.checkState(table.length < MAXIMUM_CAPACITY, "Too many objects");
+    allocate(table.length * 2);
+    objects = Arrays.copyOf(objects, threshold + 1);
+    int[] tab = table;
+    int mask = tab.length - 1;
+    for (int number = 0; number < size; number++) {
+      int i = indexOf(objects[number], mask);
+      while (tab[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      tab[i] = number + 1;
+    }
+  }
+
+  private void allocate(int capacity) {
+    table = new int[capacity];
+    threshold = thresholdOf(capacity);
+  }
+
+  private static int thresholdOf(int capacity) {
+    // a maximum load factor of 3/4
+    return capacity - (capacity >>> 2);
+  }
+
+  private static int indexOf(Object o, int mask) {
+    int h = System.identityHashCode(o) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -0,0 +1,278 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * A model of how a (HotSpot-like) Java VM lays out objects in memory, which
+ * computes the shallow size of an object from its class, without the need of
+ * an {@code Instrumentation} (i.e. of a javaagent).
+ *
+ * <p>The model is defined by a few parameters: the size of an object header,
+ * the size of a reference, and the alignment of objects. The parameters of
+ * the running VM are detected by {@link #current()}. Fields are assumed to be
+ * laid out as recent HotSpot versions do: the fields of a superclass come
+ * first, and then the fields declared by the class itself, largest first,
+ * each aligned to its own size, and filling any gaps that were left by the
+ * superclass layout. An array consists of a header, a length, and the
+ * elements.
+ *
+ * <p>A few core classes (such as {@code Thread} and {@code ClassLoader}) have
+ * fields that are injected by the VM and are invisible to reflection; their
+ * instances are underestimated by this model.
+ *
+ * <p>The computed size of each class is cached, so sizing an object only
+ * takes a lookup (plus a multiplication, for arrays).
+ */
+public final class ObjectLayout {
+  private static final ObjectLayout current = detect();
+
+  private final int objectHeaderSize;
+  private final int referenceSize;
+  private final int objectAlignment;
+  private final int wordSize;
+
+  private final ClassValue<ClassLayout> classLayouts = new ClassValue<ClassLayout>() {
+    @Override
+    protected ClassLayout computeValue(Class<?> type) {
+      return layOut(type);
+    }
+  };
+
+  /**
+   * Creates a layout model with the given parameters.
+   *
+   * @param objectHeaderSize the size, in bytes, of the header of an object
+   * (e.g. 12 for 64-bit VMs with compressed class pointers, 16 for 64-bit VMs
+   * without, 8 for 32-bit VMs); arrays additionally have a 4-byte length
+   * @param referenceSize the size, in bytes, of a reference (4 or 8)
+   * @param objectAlignment the alignment, in bytes, of objects in the heap
+   * (a power of two, usually 8)
+   */
+  public ObjectLayout(int objectHeaderSize, int referenceSize, int objectAlignment) {
+    Preconditions.checkArgument(objectHeaderSize > 0, "Non-positive header size");
+    Preconditions.checkArgument(referenceSize == 4 || referenceSize == 8,
+        "Reference size must be 4 or 8");
+    Preconditions.checkArgument(objectAlignment > 0
+        && (objectAlignment & (objectAlignment - 1)) == 0, "Alignment must be a power of two");
+    this.objectHeaderSize = objectHeaderSize;
+    this.referenceSize = referenceSize;
+    this.objectAlignment = objectAlignment;
+    // the header of a 32-bit VM consists of two 4-byte words
+    this.wordSize = objectHeaderSize == 8 ? 4 : 8;
+  }
+
+  /**
+   * Returns the layout model of the running VM.
+   */
+  public static ObjectLayout current() {
+    return current;
+  }
+
+  /**
+   * Returns the size, in bytes, of the header of an object.
+   */
+  public int getObjectHeaderSize() {
+    return objectHeaderSize;
+  }
+
+  /**
+   * Returns the size, in bytes, of a reference.
+   */
+  public int getReferenceSize() {
+    return referenceSize;
+  }
+
+  /**
+   * Returns the alignment, in bytes, of objects.
+   */
+  public int getObjectAlignment() {
+    return objectAlignment;
+  }
+
+  /**
+   * Returns the shallow size, in bytes, of the given object.
+   */
+  public long sizeOf(Object o) {
+    Class<?> type = o.getClass();
+    if (type.isArray()) {
+      return arraySize(type.getComponentType(), Array.getLength(o));
+    }
+    return classLayouts.get(type).instanceSize;
+  }
+
+  /**
+   * Returns the shallow size, in bytes, of any instance of the given
+   * (non-array) class.
+   *
+   * @throws IllegalArgumentException if {@code type} is an array class
+   */
+  public long instanceSize(Class<?> type) {
+    Preconditions.checkArgument(!type.isArray(), "Array class: %s", type);
+    return classLayouts.get(type).instanceSize;
+  }
+
+  /**
+   * Returns the size, in bytes, of an array with the given component type and
+   * length.
+   */
+  public long arraySize(Class<?> componentType, int length) {
+    Preconditions.checkArgument(length >= 0, "Negative length");
+    int elementSize = sizeOfType(componentType);
+    return align(arrayBaseOffset(elementSize) + (long) length * elementSize);
+  }
+
+  /**
+   * Returns the offset, in bytes, of the first element of an array whose
+   * elements take {@code elementSize} bytes each.
+   */
+  long arrayBaseOffset(int elementSize) {
+    return roundUp(objectHeaderSize + 4, Math.max(elementSize, wordSize));
+  }
+
+  /**
+   * Returns the size, in bytes, that a field (or an array element) of the
+   * given type takes.
+   */
+  int sizeOfType(Class<?> type) {
+    if (!type.isPrimitive()) return referenceSize;
+    if (type == long.class || type == double.class) return 8;
+    if (type == int.class || type == float.class) return 4;
+    if (type == short.class || type == char.class) return 2;
+    return 1;
+  }
+
+  private long align(long size) {
+    return roundUp(size, objectAlignment);
+  }
+
+  private static long roundUp(long value, int alignment) {
+    return (value + alignment - 1) & -alignment;
+  }
+
+  private ClassLayout layOut(Class<?> type) {
+    Class<?> superclass = type.getSuperclass();
+    ClassLayout layout = superclass == null ? emptyLayout() : classLayouts.get(superclass);
+    int count = 0;
+    Field[] declared = type.getDeclaredFields();
+    int[] sizes = new int[declared.length];
+    for (Field field : declared) {
+      if (Modifier.isStatic(field.getModifiers())) continue;
+      sizes[count++] = sizeOfType(field.getType());
+    }
+    return layOut(layout, Arrays.copyOf(sizes, count));
+  }
+
+  /**
+   * Returns the layout of a class without any fields (i.e. of
+   * {@code Object}).
+   */
+  ClassLayout emptyLayout() {
+    return new ClassLayout(objectHeaderSize, new long[0]);
+  }
+
+  /**
+   * Returns the layout of a class that declares fields of the given sizes
+   * (which are sorted, in place) and extends the class of the given layout.
+   * This lets classes that are only known by the types of their fields (such
+   * as those read from a heap dump) be laid out, too.
+   */
+  ClassLayout layOut(ClassLayout superLayout, int[] sizes) {
+    // the declared fields, largest first
+    int count = sizes.length;
+    Arrays.sort(sizes);
+
+    long end = superLayout.end;
+    long[] gaps = superLayout.gaps.clone();
+    int gapCount = gaps.length / 2;
+    for (int i = count - 1; i >= 0; i--) {
+      int size = sizes[i];
+      boolean placed = false;
+      for (int g = 0; g < gapCount && !placed; g++) {
+        long gapStart = gaps[2 * g];
+        long start = roundUp(gapStart, size);
+        if (start + size <= gaps[2 * g + 1]) {
+          gaps[2 * g] = start + size;
+          if (start > gapStart) {
+            // keep the padding before the field as a (smaller) gap
+            gaps = Arrays.copyOf(gaps, 2 * gapCount + 2);
+            gaps[2 * gapCount] = gapStart;
+            gaps[2 * gapCount + 1] = start;
+            gapCount++;
+          }
+          placed = true;
+        }
+      }
+      if (!placed) {
+        long offset = roundUp(end, size);
+        if (offset > end) {
+          gaps = Arrays.copyOf(gaps, 2 * gapCount + 2);
+          gaps[2 * gapCount] = end;
+          gaps[2 * gapCount + 1] = offset;
+          gapCount++;
+        }
+        end = offset + size;
+      }
+    }
+    return new ClassLayout(end, gaps);
+  }
+
+  /**
+   * The layout of the fields of a class: where the last field ends, and which
+   * space is left unused before that.
+   */
+  final class ClassLayout {
+    final long end;
+    final long[] gaps;
+    final long instanceSize;
+
+    ClassLayout(long end, long[] gaps) {
+      this.end = end;
+      this.gaps = gaps;
+      this.instanceSize = align(end);
+    }
+  }
+
+  private static ObjectLayout detect() {
+    if ("32".equals(System.getProperty("sun.arch.data.model"))) {
+      return new ObjectLayout(8, 4, 8);
+    }
+    try {
+      com.sun.management.HotSpotDiagnosticMXBean hotSpot =
+          ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+      boolean compressedOops = booleanOption(hotSpot, "UseCompressedOops", false);
+      // older VMs tie compressed class pointers to compressed references
+      boolean compressedClassPointers =
+          booleanOption(hotSpot, "UseCompressedClassPointers", compressedOops);
+      int alignment = Integer.parseInt(hotSpot.getVMOption("ObjectAlignmentInBytes").getValue());
+      return new ObjectLayout(compressedClassPointers ? 12 : 16, compressedOops ? 4 : 8, alignment);
+    } catch (RuntimeException e) {
+      // not a HotSpot VM; assume a 64-bit layout without compressed pointers
+      return new ObjectLayout(16, 8, 8);
+    }
+  }
+
+  private static boolean booleanOption(com.sun.management.HotSpotDiagnosticMXBean hotSpot,
+      String name, boolean defaultValue) {
+    try {
+      return Boolean.parseBoolean(hotSpot.getVMOption(name).getValue());
+    } catch (IllegalArgumentException e) {
+      // no such option in this VM
+      return defaultValue;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("ObjectHeaderSize", objectHeaderSize)
+    .add("ReferenceSize", referenceSize)
+    .add("ObjectAlignment", objectAlignment)
+    .toString();
+  }
+}
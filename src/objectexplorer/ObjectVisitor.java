@@ -20,8 +20,8 @@ public interface ObjectVisitor<T> {
    *
    * @param chain the chain that leads to the explored value.
    * @return {@link Traversal#EXPLORE} to denote that the visited object
-   * should be further explored, or {@link Traversal#SKIP} to avoid
-   * exploring it.
+   * should be further explored, {@link Traversal#SKIP} to avoid
+   * exploring it, or {@link Traversal#STOP} to end the whole traversal.
    */
   Traversal visit(Chain chain);
 
@@ -44,6 +44,13 @@ public interface ObjectVisitor<T> {
     /**
      * The visited object should not be explored.
      */
-    SKIP
+    SKIP,
+
+    /**
+     * The visited object should not be explored, and neither should anything
+     * else: the traversal ends (and the result of the visitor is returned)
+     * without visiting any more values.
+     */
+    STOP
   }
 }
@@ -0,0 +1,468 @@
+package objectexplorer;
+
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectVisitor.Traversal;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.EnumSet;
+
+/**
+ * The depth-first traversal behind
+ * {@link ObjectExplorer#exploreObject(Object, EdgeVisitor, EnumSet)}.
+ *
+ * <p>The path from the root to the object currently being expanded is kept as
+ * a stack of {@link Frame}s, one per object, each with a cursor to the next
+ * child to be visited. Frames are reused as the traversal goes up and down, and
+ * the visitor is given the same {@link Edge} instance every time, so that
+ * nothing is allocated per explored reference. {@link Chain}s are only created
+ * (and then memoized in the frames) when the visitor asks for them.
+ */
+final class ObjectWalker {
+  private final EdgeVisitor<?> visitor;
+  private final boolean visitNull;
+  private final boolean visitPrimitives;
+  private final PrimitiveVisitor primitiveVisitor;
+  private final PrimitiveCounter primitiveCounter;
+  private final Splitter splitter;
+  private final TraversalStats stats;
+  private final FieldFilter fieldFilter;
+  private final Edge edge = new Edge(this);
+  private int untilTimed = TraversalStats.TIMING_SAMPLE_INTERVAL;
+
+  private Frame[] frames = new Frame[32];
+  private int depth;
+
+  ObjectWalker(EdgeVisitor<?> visitor, EnumSet<Feature> features) {
+    this(visitor, features, null);
+  }
+
+  ObjectWalker(EdgeVisitor<?> visitor, EnumSet<Feature> features, Splitter splitter) {
+    this(visitor, features, splitter, null);
+  }
+
+  /**
+   * @param stats where the metrics of the traversal are added, or {@code null}
+   * to keep none (which costs nothing more than a null check here and there)
+   */
+  ObjectWalker(EdgeVisitor<?> visitor, EnumSet<Feature> features, Splitter splitter,
+      TraversalStats stats) {
+    this(visitor, features, splitter, stats, null);
+  }
+
+  /**
+   * @param fieldFilter the filter of the fields to follow, or {@code null} to
+   * follow all of them
+   */
+  ObjectWalker(EdgeVisitor<?> visitor, EnumSet<Feature> features, Splitter splitter,
+      TraversalStats stats, FieldFilter fieldFilter) {
+    this.visitor = visitor;
+    this.splitter = splitter;
+    this.stats = stats;
+    this.fieldFilter = fieldFilter;
+    this.visitNull = features.contains(Feature.VISIT_NULL);
+    this.visitPrimitives = features.contains(Feature.VISIT_PRIMITIVES);
+    this.primitiveVisitor = visitor instanceof PrimitiveVisitor
+        ? (PrimitiveVisitor) visitor : null;
+    this.primitiveCounter = visitor instanceof PrimitiveCounter
+        ? (PrimitiveCounter) visitor : null;
+  }
+
+  void walk(Object root) {
+    if (visitor.visit(edge.setRoot(root)) != Traversal.EXPLORE) return;
+    push(root, null, -1);
+    walkFrames();
+  }
+
+  /**
+   * Explores a part of an already visited object: the elements (if it is an
+   * array) or the reference fields (otherwise) with indexes in
+   * {@code [from, to)}, and whatever is reachable from them. Primitive fields
+   * are only visited if {@code from == 0}.
+   *
+   * @param chain the chain that leads to the object
+   */
+  void walkSegment(Object value, Chain chain, int from, int to) {
+    push(value, null, -1);
+    Frame frame = frames[0];
+    frame.chain = chain;
+    frame.cursor = from;
+    frame.end = to;
+    walkFrames();
+  }
+
+  private void walkFrames() {
+    while (depth > 0) {
+      if (splitter != null && splitter.isStopped()) {
+        stop();
+        return;
+      }
+      Frame frame = frames[depth - 1];
+      if (frame.plan.isArray) {
+        expandArray(frame);
+      } else {
+        expandFields(frame);
+      }
+    }
+  }
+
+  /**
+   * Visits the children of the array of the given (top) frame, until either one
+   * of them is to be explored (and thus pushed), or there are no more of them
+   * (and the frame is popped).
+   */
+  private void expandArray(Frame frame) {
+    Object array = frame.value;
+    if (frame.plan.isPrimitiveArray) {
+      if (visitPrimitives) {
+        if (stats != null) {
+          stats.primitives += Array.getLength(array);
+        }
+        if (primitiveCounter != null) {
+          primitiveCounter.countPrimitives(frame.plan.componentKind, Array.getLength(array));
+        } else if (primitiveVisitor != null) {
+          visitPrimitiveArray(array, frame.plan.componentKind);
+        } else {
+          for (int i = 0, length = Array.getLength(array); i < length; i++) {
+            visitor.visit(edge.setArrayIndex(array, frame.plan, i, Array.get(array, i)));
+          }
+        }
+      }
+      pop();
+      return;
+    }
+    Object[] elements = (Object[]) array;
+    while (frame.cursor < frame.end) {
+      int i = frame.cursor++;
+      Object child = elements[i];
+      boolean timed = stats != null && timeNext();
+      if (child == null) {
+        if (stats != null) {
+          stats.nulls++;
+        }
+        if (visitNull)
+          visit(edge.setArrayIndex(array, frame.plan, i, null), timed);
+        continue;
+      }
+      Traversal traversal = visit(edge.setArrayIndex(array, frame.plan, i, child), timed);
+      if (traversal == Traversal.EXPLORE) {
+        maybeSplit(frame);
+        push(child, null, i);
+        return;
+      }
+      if (traversal == Traversal.STOP) {
+        stop();
+        return;
+      }
+    }
+    pop();
+  }
+
+  /**
+   * Visits the fields of the object of the given (top) frame, until either one
+   * of them is to be explored (and thus pushed), or there are no more of them
+   * (and the frame is popped).
+   */
+  private void expandFields(Frame frame) {
+    Object object = frame.value;
+    if (frame.cursor == 0 && visitPrimitives) {
+      if (stats != null) {
+        stats.primitives += frame.plan.primitiveFields.length;
+      }
+      if (primitiveCounter != null) {
+        countPrimitiveFields(frame.plan);
+      } else if (primitiveVisitor != null) {
+        visitPrimitiveFields(object, frame.plan);
+      } else {
+        for (FieldReader reader : frame.plan.primitiveReaders) {
+          visitor.visit(edge.setField(object, reader, reader.get(object)));
+        }
+      }
+    }
+    FieldReader[] readers = frame.plan.referenceReaders;
+    while (frame.cursor < frame.end) {
+      FieldReader reader = readers[frame.cursor++];
+      boolean timed = stats != null && timeNext();
+      Object child = timed ? timedRead(reader, object) : reader.get(object);
+      if (child == null) {
+        if (stats != null) {
+          stats.nulls++;
+        }
+        if (visitNull)
+          visit(edge.setField(object, reader, null), timed);
+        continue;
+      }
+      Traversal traversal = visit(edge.setField(object, reader, child), timed);
+      if (traversal == Traversal.EXPLORE) {
+        maybeSplit(frame);
+        push(child, reader.field, -1);
+        return;
+      }
+      if (traversal == Traversal.STOP) {
+        stop();
+        return;
+      }
+    }
+    pop();
+  }
+
+  /**
+   * Visits a reference (possibly {@code null}), and adds it to the stats, if
+   * any.
+   */
+  private Traversal visit(Edge edge, boolean timed) {
+    if (stats == null) {
+      return visitor.visit(edge);
+    }
+    Traversal traversal;
+    if (timed) {
+      long start = System.nanoTime();
+      traversal = visitor.visit(edge);
+      stats.visitNanos += System.nanoTime() - start;
+    } else {
+      traversal = visitor.visit(edge);
+    }
+    if (edge.getValue() != null) {
+      stats.references++;
+      if (traversal != Traversal.EXPLORE) {
+        stats.objectsSkipped++;
+      }
+    }
+    return traversal;
+  }
+
+  /**
+   * Returns whether the next reference slot should be timed (one in
+   * {@link TraversalStats#TIMING_SAMPLE_INTERVAL} is).
+   */
+  private boolean timeNext() {
+    if (--untilTimed > 0) {
+      return false;
+    }
+    untilTimed = TraversalStats.TIMING_SAMPLE_INTERVAL;
+    stats.timedReferences++;
+    return true;
+  }
+
+  private Object timedRead(FieldReader reader, Object owner) {
+    long start = System.nanoTime();
+    Object value = reader.get(owner);
+    stats.fieldReadNanos += System.nanoTime() - start;
+    return value;
+  }
+
+  private void visitPrimitiveArray(Object array, PrimitiveKind kind) {
+    PrimitiveVisitor v = primitiveVisitor;
+    int length = Array.getLength(array);
+    if (!v.visitPrimitiveArray(array, kind.type, length)) return;
+    switch (kind) {
+      case BOOLEAN: {
+        boolean[] a = (boolean[]) array;
+        for (int i = 0; i < length; i++) v.visitBoolean(array, null, i, a[i]);
+        break;
+      }
+      case BYTE: {
+        byte[] a = (byte[]) array;
+        for (int i = 0; i < length; i++) v.visitByte(array, null, i, a[i]);
+        break;
+      }
+      case CHAR: {
+        char[] a = (char[]) array;
+        for (int i = 0; i < length; i++) v.visitChar(array, null, i, a[i]);
+        break;
+      }
+      case SHORT: {
+        short[] a = (short[]) array;
+        for (int i = 0; i < length; i++) v.visitShort(array, null, i, a[i]);
+        break;
+      }
+      case INT: {
+        int[] a = (int[]) array;
+        for (int i = 0; i < length; i++) v.visitInt(array, null, i, a[i]);
+        break;
+      }
+      case FLOAT: {
+        float[] a = (float[]) array;
+        for (int i = 0; i < length; i++) v.visitFloat(array, null, i, a[i]);
+        break;
+      }
+      case LONG: {
+        long[] a = (long[]) array;
+        for (int i = 0; i < length; i++) v.visitLong(array, null, i, a[i]);
+        break;
+      }
+      case DOUBLE: {
+        double[] a = (double[]) array;
+        for (int i = 0; i < length; i++) v.visitDouble(array, null, i, a[i]);
+        break;
+      }
+    }
+  }
+
+  private void countPrimitiveFields(ClassPlan plan) {
+    PrimitiveKind[] kinds = plan.primitiveCountKinds;
+    int[] counts = plan.primitiveCounts;
+    for (int i = 0; i < kinds.length; i++) {
+      primitiveCounter.countPrimitives(kinds[i], counts[i]);
+    }
+  }
+
+  private void visitPrimitiveFields(Object object, ClassPlan plan) {
+    PrimitiveVisitor v = primitiveVisitor;
+    FieldReader[] readers = plan.primitiveReaders;
+    PrimitiveKind[] kinds = plan.primitiveFieldKinds;
+    for (int i = 0; i < readers.length; i++) {
+      FieldReader r = readers[i];
+      Field f = r.field;
+      switch (kinds[i]) {
+        case BOOLEAN: v.visitBoolean(object, f, -1, r.getBoolean(object)); break;
+        case BYTE: v.visitByte(object, f, -1, r.getByte(object)); break;
+        case CHAR: v.visitChar(object, f, -1, r.getChar(object)); break;
+        case SHORT: v.visitShort(object, f, -1, r.getShort(object)); break;
+        case INT: v.visitInt(object, f, -1, r.getInt(object)); break;
+        case FLOAT: v.visitFloat(object, f, -1, r.getFloat(object)); break;
+        case LONG: v.visitLong(object, f, -1, r.getLong(object)); break;
+        case DOUBLE: v.visitDouble(object, f, -1, r.getDouble(object)); break;
+      }
+    }
+  }
+
+  private void push(Object value, Field field, int arrayIndex) {
+    if (depth == frames.length) {
+      Frame[] newFrames = new Frame[depth * 2];
+      System.arraycopy(frames, 0, newFrames, 0, depth);
+      frames = newFrames;
+    }
+    Frame frame = frames[depth];
+    if (frame == null) {
+      frame = frames[depth] = new Frame();
+    }
+    ClassPlan plan = fieldFilter == null
+        ? ClassPlan.of(value.getClass()) : fieldFilter.planOf(value.getClass());
+    frame.value = value;
+    frame.plan = plan;
+    frame.field = field;
+    frame.arrayIndex = arrayIndex;
+    frame.cursor = 0;
+    frame.end = plan.isArray ? Array.getLength(value) : plan.referenceFields.length;
+    // the edge that led to the value is still the current one, and may have a chain already
+    frame.chain = edge.createdChain();
+    frame.tag = edge.getTag();
+    depth++;
+    if (stats != null) {
+      stats.objectsExplored++;
+      stats.peakDepth = Math.max(stats.peakDepth, depth);
+    }
+  }
+
+  /**
+   * Before descending into a child of the given (top) frame, offers the
+   * latter half of its remaining children to the splitter, if it wants them.
+   */
+  private void maybeSplit(Frame frame) {
+    if (splitter == null || frame.cursor == frame.end || !splitter.wantsSplit()) return;
+    int mid = frame.cursor + (frame.end - frame.cursor) / 2;
+    splitter.split(frame.value, chainOf(depth - 1), mid, frame.end);
+    frame.end = mid;
+  }
+
+  private void pop() {
+    Frame frame = frames[--depth];
+    frame.value = null;
+    frame.chain = null;
+    frame.tag = null;
+  }
+
+  /**
+   * Abandons every pending frame, which ends the traversal (along with the
+   * parts of it that were given to the splitter).
+   */
+  private void stop() {
+    while (depth > 0) {
+      pop();
+    }
+    if (splitter != null) {
+      splitter.stop();
+    }
+  }
+
+  /**
+   * Returns the tag of the object currently being expanded, i.e. the parent of
+   * the edge being visited.
+   */
+  Object currentTag() {
+    return frames[depth - 1].tag;
+  }
+
+  /**
+   * Returns the chain that leads to the object currently being expanded, i.e.
+   * the parent of the edge being visited.
+   */
+  Chain currentChain() {
+    return chainOf(depth - 1);
+  }
+
+  private Chain chainOf(int index) {
+    int first = index;
+    while (first > 0 && frames[first].chain == null) {
+      first--;
+    }
+    for (int i = first; i <= index; i++) {
+      Frame frame = frames[i];
+      if (frame.chain != null) continue;
+      if (i == 0) {
+        frame.chain = Chain.root(frame.value);
+      } else {
+        Chain parentChain = frames[i - 1].chain;
+        frame.chain = frame.field != null
+            ? parentChain.appendField(frame.field, frame.value)
+            : parentChain.appendArrayIndex(frame.arrayIndex, frame.value);
+      }
+    }
+    return frames[index].chain;
+  }
+
+  /**
+   * An object whose children are being visited, along with the reference that
+   * led to it.
+   */
+  private static final class Frame {
+    Object value;
+    ClassPlan plan;
+    Field field;
+    int arrayIndex;
+    int cursor;
+    int end;
+    Chain chain;
+    Object tag;
+  }
+
+  /**
+   * Receives parts of the traversal to be explored elsewhere (e.g. by another
+   * thread), and ends them all when the traversal is stopped.
+   */
+  interface Splitter {
+    /**
+     * Returns whether the walker should give away some of its pending work.
+     */
+    boolean wantsSplit();
+
+    /**
+     * Takes over the exploration of a part of an already visited object.
+     *
+     * @see ObjectWalker#walkSegment(Object, Chain, int, int)
+     */
+    void split(Object value, Chain chain, int from, int to);
+
+    /**
+     * Stops the whole traversal, because a visitor returned
+     * {@link Traversal#STOP}.
+     */
+    void stop();
+
+    /**
+     * Returns whether the whole traversal has been stopped.
+     */
+    boolean isStopped();
+  }
+}
@@ -0,0 +1,191 @@
+package objectexplorer;
+
+import objectexplorer.ObjectExplorer.Feature;
+import objectexplorer.ObjectVisitor.Traversal;
+import com.google.common.base.Predicate;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Attributes the objects reachable from several roots to either a single root,
+ * or to all of them (as shared), behind
+ * {@link MemoryMeasurer#measureRoots(java.util.Map, Predicate)}.
+ *
+ * <p>Every object is numbered once (in a single {@link ObjectIndex}), and has
+ * an owner: the root whose walk reached it first, or {@link #SHARED}. Each root
+ * is walked in turn, in two phases:
+ * <ol>
+ * <li>the objects that no root owns yet are taken over and explored; the
+ * objects that other roots own (or that are shared) are not explored, but
+ * remembered as the <em>frontier</em> of this root;
+ * <li>from each frontier object owned by another root, the region that is
+ * reachable from it is walked again, turning every object in it that is not
+ * shared yet into a shared one.
+ * </ol>
+ * When an object is turned into a shared one, it is also remembered as an
+ * entry point of the root that owned it. At the end, the shared bytes of each
+ * root are those of the shared objects that are reachable from its frontier
+ * and its entry points, which are found by walking the shared region only.
+ * No root ever re-walks the objects it owns exclusively.
+ */
+final class OwnershipAnalysis {
+  private static final int SHARED = -1;
+
+  private final Predicate<Edge> filter;
+  private final ObjectIndex index = new ObjectIndex();
+  private final ObjectWalker walker;
+  private final Visitor visitor = new Visitor();
+
+  // per object (by number): its owner, the last root whose shared region included it, and the
+  // last root that remembered it as an entry point (stamped as root + 1)
+  private int[] owners = new int[16];
+  private int[] stamps = new int[16];
+  private int[] entryStamps = new int[16];
+
+  // per root
+  private final long[] exclusiveBytes;
+  private final long[] sharedBytes;
+  private final IntList[] sharedEntries;
+
+  private long unionBytes;
+  private long sharedUnionBytes;
+
+  /**
+   * @param filter decides which edges lead to objects of the object graphs
+   * @param rootCount the number of roots
+   */
+  OwnershipAnalysis(Predicate<Edge> filter, int rootCount) {
+    this.filter = filter;
+    this.walker = new ObjectWalker(visitor, EnumSet.noneOf(Feature.class));
+    this.exclusiveBytes = new long[rootCount];
+    this.sharedBytes = new long[rootCount];
+    this.sharedEntries = new IntList[rootCount];
+    for (int r = 0; r < rootCount; r++) {
+      sharedEntries[r] = new IntList();
+    }
+  }
+
+  /**
+   * Walks the root with the given number (roots must be added in order).
+   */
+  void addRoot(int root, Object rootObject) {
+    IntList frontier = sharedEntries[root];
+    int frontierStart = frontier.size();
+    visitor.start(Phase.OWN, root);
+    walker.walk(rootObject);
+    visitor.start(Phase.SHARE, root);
+    for (int i = frontierStart; i < frontier.size(); i++) {
+      walker.walk(index.get(frontier.get(i)));
+    }
+  }
+
+  /**
+   * Finds the shared bytes of every root; to be called after all roots have
+   * been added.
+   */
+  void finish() {
+    for (int root = 0; root < sharedEntries.length; root++) {
+      IntList entries = sharedEntries[root];
+      visitor.start(Phase.COUNT_SHARED, root);
+      for (int i = 0; i < entries.size(); i++) {
+        walker.walk(index.get(entries.get(i)));
+      }
+    }
+  }
+
+  long exclusiveBytes(int root) {
+    return exclusiveBytes[root];
+  }
+
+  long sharedBytes(int root) {
+    return sharedBytes[root];
+  }
+
+  long unionBytes() {
+    return unionBytes;
+  }
+
+  long sharedUnionBytes() {
+    return sharedUnionBytes;
+  }
+
+  private enum Phase { OWN, SHARE, COUNT_SHARED }
+
+  private final class Visitor implements EdgeVisitor<Void> {
+    private Phase phase;
+    private int root;
+
+    void start(Phase phase, int root) {
+      this.phase = phase;
+      this.root = root;
+    }
+
+    public Traversal visit(Edge edge) {
+      // the walks of the later phases start from objects that have been accepted already
+      if (edge.hasParent() || phase == Phase.OWN) {
+        if (!filter.apply(edge)) {
+          return Traversal.SKIP;
+        }
+      }
+      Object o = edge.getValue();
+      switch (phase) {
+        case OWN: {
+          int number = index.add(o);
+          if (number >= 0) {
+            setOwner(number, root);
+            long size = MemoryMeasurer.sizeOf(o);
+            exclusiveBytes[root] += size;
+            unionBytes += size;
+            return Traversal.EXPLORE;
+          }
+          // an object may be referenced many times from this root, but is an entry point once
+          if (owners[~number] != root && entryStamps[~number] != root + 1) {
+            entryStamps[~number] = root + 1;
+            sharedEntries[root].add(~number);
+          }
+          return Traversal.SKIP;
+        }
+        case SHARE: {
+          int number = index.numberOf(o);
+          int owner = owners[number];
+          if (owner == SHARED) {
+            return Traversal.SKIP;
+          }
+          owners[number] = SHARED;
+          long size = MemoryMeasurer.sizeOf(o);
+          exclusiveBytes[owner] -= size;
+          sharedUnionBytes += size;
+          if (owner != root) {
+            sharedEntries[owner].add(number);
+          }
+          return Traversal.EXPLORE;
+        }
+        case COUNT_SHARED: {
+          int number = index.numberOf(o);
+          if (owners[number] != SHARED || stamps[number] == root + 1) {
+            return Traversal.SKIP;
+          }
+          stamps[number] = root + 1;
+          sharedBytes[root] += MemoryMeasurer.sizeOf(o);
+          return Traversal.EXPLORE;
+        }
+        default:
+          throw new AssertionError(phase);
+      }
+    }
+
+    private void setOwner(int number, int owner) {
+      if (number == owners.length) {
+        owners = Arrays.copyOf(owners, number * 2);
+        stamps = Arrays.copyOf(stamps, number * 2);
+        entryStamps = Arrays.copyOf(entryStamps, number * 2);
+      }
+      owners[number] = owner;
+    }
+
+    public Void result() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package objectexplorer;
+
+import objectexplorer.ObjectExplorer.Feature;
+
+import java.util.EnumSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The fork/join traversal behind
+ * {@link ObjectExplorer#exploreObjectInParallel(Object, SplittableEdgeVisitor,
+ * EnumSet, ForkJoinPool)}.
+ *
+ * <p>Each task runs an {@link ObjectWalker} of its own, with a visitor forked
+ * from the original one. Whenever a walker is about to descend into an object
+ * while its worker thread has run out of queued tasks (i.e. other workers may
+ * be idle), it splits off the latter half of the remaining children of the
+ * current object into a new task, which idle workers can steal. Tasks never
+ * wait for the tasks they split off; instead, every task is registered in a
+ * single queue that the root task drains (joining each task and merging its
+ * visitor) once its own walk is over. This keeps the nesting of joins flat,
+ * regardless of the depth of the graph. If a visitor stops the traversal,
+ * every task stops as soon as it notices.
+ */
+final class ParallelWalker {
+  /**
+   * A task is split off only while fewer than this many tasks are queued
+   * locally, beyond those that other workers are expected to steal.
+   */
+  private static final int SURPLUS_THRESHOLD = 2;
+
+  private ParallelWalker() { }
+
+  static <T> void walk(Object rootObject, SplittableEdgeVisitor<T> visitor,
+      EnumSet<Feature> features, ForkJoinPool pool) {
+    pool.invoke(new RootTask<T>(rootObject, visitor, features));
+  }
+
+  private static final class RootTask<T> extends RecursiveAction
+      implements ObjectWalker.Splitter {
+    private static final long serialVersionUID = 1L;
+
+    private final Object rootObject;
+    private final SplittableEdgeVisitor<T> visitor;
+    private final EnumSet<Feature> features;
+    private final Queue<SegmentTask<T>> tasks = new ConcurrentLinkedQueue<SegmentTask<T>>();
+    private volatile boolean stopped;
+
+    RootTask(Object rootObject, SplittableEdgeVisitor<T> visitor, EnumSet<Feature> features) {
+      this.rootObject = rootObject;
+      this.visitor = visitor;
+      this.features = features;
+    }
+
+    @Override
+    protected void compute() {
+      new ObjectWalker(visitor, features, this).walk(rootObject);
+      SegmentTask<T> task;
+      while ((task = tasks.poll()) != null) {
+        task.join();
+        visitor.merge(task.visitor);
+      }
+    }
+
+    public boolean wantsSplit() {
+      return ForkJoinTask.getSurplusQueuedTaskCount() < SURPLUS_THRESHOLD;
+    }
+
+    public void split(Object value, Chain chain, int from, int to) {
+      fork(visitor, value, chain, from, to);
+    }
+
+    public void stop() {
+      stopped = true;
+    }
+
+    public boolean isStopped() {
+      return stopped;
+    }
+
+    void fork(SplittableEdgeVisitor<T> origin, Object value, Chain chain, int from, int to) {
+      SegmentTask<T> task = new SegmentTask<T>(this, origin.fork(), value, chain, from, to);
+      tasks.add(task);
+      task.fork();
+    }
+  }
+
+  private static final class SegmentTask<T> extends RecursiveAction
+      implements ObjectWalker.Splitter {
+    private static final long serialVersionUID = 1L;
+
+    private final RootTask<T> root;
+    final SplittableEdgeVisitor<T> visitor;
+    private final Object value;
+    private final Chain chain;
+    private final int from;
+    private final int to;
+
+    SegmentTask(RootTask<T> root, SplittableEdgeVisitor<T> visitor,
+        Object value, Chain chain, int from, int to) {
+      this.root = root;
+      this.visitor = visitor;
+      this.value = value;
+      this.chain = chain;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      new ObjectWalker(visitor, root.features, this).walkSegment(value, chain, from, to);
+    }
+
+    public boolean wantsSplit() {
+      return ForkJoinTask.getSurplusQueuedTaskCount() < SURPLUS_THRESHOLD;
+    }
+
+    public void split(Object value, Chain chain, int from, int to) {
+      root.fork(visitor, value, chain, from, to);
+    }
+
+    public void stop() {
+      root.stop();
+    }
+
+    public boolean isStopped() {
+      return root.stopped;
+    }
+  }
+}
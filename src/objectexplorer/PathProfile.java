@@ -0,0 +1,221 @@
+package objectexplorer;
+
+import objectexplorer.ObjectVisitor.Traversal;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The bytes and objects of an object graph, attributed to the paths through
+ * which they are reached from the root, to show which references hold most of
+ * the memory footprint.
+ *
+ * <p>A path is a pattern of references: the class of the root, followed by
+ * the field names, and {@code []} for the elements of an array (whichever
+ * their index), such as {@code java.util.HashMap->table->[]->value}, as in a
+ * {@link MemorySnapshot}. Each object is attributed to the path through which
+ * the traversal first reached it, truncated to the maximum depth of the
+ * profile (so that, for example, the nodes of a long linked list share a
+ * path, instead of making one each). The instances and bytes of a path are
+ * those of the objects attributed to it; the totals of a path also include
+ * those of all the longer paths that start with it.
+ *
+ * @see MemoryMeasurer#profilePaths(Object, Predicate, int)
+ */
+public final class PathProfile {
+  private final long totalInstances;
+  private final long totalBytes;
+  private final ImmutableList<Entry> paths;
+
+  private PathProfile(long totalInstances, long totalBytes, ImmutableList<Entry> paths) {
+    this.totalInstances = totalInstances;
+    this.totalBytes = totalBytes;
+    this.paths = paths;
+  }
+
+  /**
+   * Returns the number of objects of the object graph.
+   */
+  public long getTotalInstances() {
+    return totalInstances;
+  }
+
+  /**
+   * Returns the memory footprint, in bytes, of the object graph.
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns the instances and bytes of each path, in the order the paths
+   * were first reached (so a path always comes after its prefixes).
+   */
+  public ImmutableList<Entry> getPaths() {
+    return paths;
+  }
+
+  /**
+   * Returns the (at most) {@code n} paths with the most bytes attributed to
+   * them, heaviest first.
+   */
+  public ImmutableList<Entry> getHeaviestPaths(int n) {
+    Preconditions.checkArgument(n >= 0, "Negative number of paths");
+    List<Entry> sorted = Lists.newArrayList(paths);
+    // stable, so equally heavy paths stay in the order they were reached
+    Collections.sort(sorted, new Comparator<Entry>() {
+      public int compare(Entry a, Entry b) {
+        return Longs.compare(b.bytes, a.bytes);
+      }
+    });
+    return ImmutableList.copyOf(sorted.subList(0, Math.min(n, sorted.size())));
+  }
+
+  /**
+   * Returns a table of the (at most) {@code n} heaviest paths, as given by
+   * {@link #getHeaviestPaths(int)}, with the share of the memory footprint of
+   * each.
+   */
+  public String report(int n) {
+    StringBuilder sb = new StringBuilder(String.format("%5s %14s %16s %7s %16s  %s%n",
+        "num", "#instances", "#bytes", "%bytes", "#total bytes", "path"));
+    int num = 0;
+    for (Entry entry : getHeaviestPaths(n)) {
+      sb.append(String.format("%4d: %14d %16d %6.1f%% %16d  %s%n", ++num, entry.instances,
+          entry.bytes, totalBytes == 0 ? 0.0 : 100.0 * entry.bytes / totalBytes,
+          entry.totalBytes, entry.path));
+    }
+    sb.append(String.format("Total %14d %16d%n", totalInstances, totalBytes));
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("TotalInstances", totalInstances)
+    .add("TotalBytes", totalBytes)
+    .add("Paths", paths.size())
+    .toString();
+  }
+
+  /**
+   * The instances and bytes of a path.
+   */
+  public static final class Entry {
+    private final String path;
+    private final int depth;
+    private final long instances;
+    private final long bytes;
+    private final long totalInstances;
+    private final long totalBytes;
+
+    Entry(String path, int depth, long instances, long bytes, long totalInstances,
+        long totalBytes) {
+      this.path = path;
+      this.depth = depth;
+      this.instances = instances;
+      this.bytes = bytes;
+      this.totalInstances = totalInstances;
+      this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Returns the path, such as {@code java.util.HashMap->table->[]->value}.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Returns the number of references of the path (0 for the root).
+     */
+    public int getDepth() {
+      return depth;
+    }
+
+    /**
+     * Returns the number of objects attributed to the path.
+     */
+    public long getInstances() {
+      return instances;
+    }
+
+    /**
+     * Returns the number of bytes of the objects attributed to the path.
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Returns the number of objects attributed to the path, or to the longer
+     * paths that start with it.
+     */
+    public long getTotalInstances() {
+      return totalInstances;
+    }
+
+    /**
+     * Returns the number of bytes of the objects attributed to the path, or
+     * to the longer paths that start with it.
+     */
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Path", path)
+      .add("Instances", instances)
+      .add("Bytes", bytes)
+      .add("TotalInstances", totalInstances)
+      .add("TotalBytes", totalBytes)
+      .toString();
+    }
+  }
+
+  /**
+   * Profiles the paths while the object graph is explored, in a
+   * {@link PathTrie}.
+   */
+  static final class Recorder implements EdgeVisitor<PathProfile> {
+    private final Predicate<Edge> filter;
+    private final PathTrie trie;
+
+    /**
+     * @param filter decides which edges lead to objects of the object graph
+     * @param maxDepth the maximum length of the profiled paths
+     */
+    Recorder(Predicate<Edge> filter, int maxDepth) {
+      this.filter = filter;
+      this.trie = new PathTrie(maxDepth);
+    }
+
+    public Traversal visit(Edge edge) {
+      if (!filter.apply(edge)) {
+        return Traversal.SKIP;
+      }
+      trie.add(edge, MemoryMeasurer.sizeOf(edge.getValue()));
+      return Traversal.EXPLORE;
+    }
+
+    public PathProfile result() {
+      ImmutableList<PathTrie.Node> nodes = trie.complete();
+      ImmutableList.Builder<Entry> paths = ImmutableList.builder();
+      for (PathTrie.Node node : nodes) {
+        paths.add(new Entry(node.name, node.depth, node.instances, node.bytes,
+            node.totalInstances, node.totalBytes));
+      }
+      return nodes.isEmpty() ? new PathProfile(0, 0, paths.build())
+          : new PathProfile(nodes.get(0).totalInstances, nodes.get(0).totalBytes, paths.build());
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package objectexplorer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The paths from the root of an object graph, through which its objects are
+ * reached, with the instances and bytes of the objects attributed to each.
+ *
+ * <p>A path is named by the class of the root, followed by the labels of its
+ * references: the field names, and {@code []} for the elements of an array
+ * (whichever their index), such as {@code java.util.HashMap->table->[]->value}.
+ * Fields of different classes that have the same name, under the same path,
+ * share a path. Paths are truncated to the maximum depth of the trie, so that
+ * (for example) the nodes of a long linked list share a path, instead of
+ * making one each.
+ *
+ * <p>The paths are interned as nodes, one per path, which the traversal
+ * carries along with the objects that it explores (see
+ * {@link Edge#setTag(Object)}); attributing an object to its path only takes a
+ * look among the children of the path of its parent, and no path is spelled
+ * out until the traversal is complete.
+ */
+final class PathTrie {
+  static final String ARRAY_ELEMENT = "[]";
+  static final String SEPARATOR = "->";
+
+  private final int maxDepth;
+  private final List<Node> nodes = Lists.newArrayList();
+
+  /**
+   * @param maxDepth the maximum length of the paths
+   */
+  PathTrie(int maxDepth) {
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Attributes the value of an edge, of the given size, to its path, and
+   * tags the edge with the node of the path. The edges are expected to be
+   * added in the order of the traversal, so the edge that led to the parent
+   * of this one has already been tagged.
+   */
+  void add(Edge edge, long size) {
+    Node node;
+    if (!edge.hasParent()) {
+      node = newNode(null, edge.getValue().getClass().getName());
+    } else {
+      Node parent = (Node) edge.getParentTag();
+      if (parent.depth < maxDepth) {
+        String label = edge.isThroughField() ? edge.getField().getName() : ARRAY_ELEMENT;
+        node = parent.child(label);
+        if (node == null) {
+          node = newNode(parent, label);
+          parent.addChild(node);
+        }
+      } else {
+        node = parent;
+      }
+    }
+    node.instances++;
+    node.bytes += size;
+    edge.setTag(node);
+  }
+
+  private Node newNode(Node parent, String label) {
+    Node node = new Node(parent, label);
+    nodes.add(node);
+    return node;
+  }
+
+  /**
+   * Names the paths and sums up their totals, once the traversal is complete,
+   * and returns them in the order they were first reached (so a path always
+   * comes after its prefixes; the first one, if any, is the root).
+   */
+  ImmutableList<Node> complete() {
+    // nodes are added after their parents, so the totals flow up in reverse order
+    for (int i = nodes.size() - 1; i >= 0; i--) {
+      Node node = nodes.get(i);
+      node.totalInstances += node.instances;
+      node.totalBytes += node.bytes;
+      if (node.parent != null) {
+        node.parent.totalInstances += node.totalInstances;
+        node.parent.totalBytes += node.totalBytes;
+      }
+    }
+    for (Node node : nodes) {
+      node.name = node.parent == null ? node.label
+          : node.parent.name + SEPARATOR + node.label;
+    }
+    return ImmutableList.copyOf(nodes);
+  }
+
+  /**
+   * A path: the label of its last reference (a field name, or
+   * {@link #ARRAY_ELEMENT}; the class name, for the root), and the objects
+   * attributed to it.
+   */
+  static final class Node {
+    final Node parent;
+    final String label;
+    final int depth;
+    long instances;
+    long bytes;
+    // set by complete()
+    String name;
+    long totalInstances;
+    long totalBytes;
+    private Node[] children = NO_CHILDREN;
+    private int childCount;
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    Node(Node parent, String label) {
+      this.parent = parent;
+      this.label = label;
+      this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Returns the child of this path with the given label, or {@code null}.
+     * Field names are interned by the VM, so they are first looked up by
+     * identity.
+     */
+    Node child(String label) {
+      for (int i = 0; i < childCount; i++) {
+        if (children[i].label == label) return children[i];
+      }
+      for (int i = 0; i < childCount; i++) {
+        if (children[i].label.equals(label)) return children[i];
+      }
+      return null;
+    }
+
+    void addChild(Node child) {
+      if (childCount == children.length) {
+        children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+      }
+      children[childCount++] = child;
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package objectexplorer;
+
+/**
+ * An optional extension of {@link EdgeVisitor}, for visitors that only count
+ * the primitives of an object graph, by kind, and have no use for their
+ * values.
+ *
+ * <p>If an {@code EdgeVisitor} implements this interface, and the traversal is
+ * asked to visit primitives (through
+ * {@link ObjectExplorer.Feature#VISIT_PRIMITIVES}), no primitive is read: the
+ * primitive fields of each object are counted at once, from the numbers of
+ * fields of each kind that the {@link ClassPlan} of its class keeps, and
+ * primitive arrays from their lengths. A visitor that needs the values
+ * implements {@link PrimitiveVisitor} instead.
+ */
+interface PrimitiveCounter {
+  /**
+   * Counts {@code count} (more) primitives of the given kind.
+   */
+  void countPrimitives(PrimitiveKind kind, long count);
+}
@@ -0,0 +1,37 @@
+package objectexplorer;
+
+/**
+ * The eight primitive types, so that a traversal can dispatch on the type of a
+ * primitive field or array with a switch, rather than by comparing classes.
+ */
+enum PrimitiveKind {
+  BOOLEAN(boolean.class),
+  BYTE(byte.class),
+  CHAR(char.class),
+  SHORT(short.class),
+  INT(int.class),
+  FLOAT(float.class),
+  LONG(long.class),
+  DOUBLE(double.class);
+
+  private static final PrimitiveKind[] kinds = values();
+
+  final Class<?> type;
+
+  private PrimitiveKind(Class<?> type) {
+    this.type = type;
+  }
+
+  /**
+   * Returns the kind of the given primitive type.
+   *
+   * @throws IllegalArgumentException if {@code type} is not a primitive type,
+   * or if it is {@code void.class}
+   */
+  static PrimitiveKind of(Class<?> type) {
+    for (PrimitiveKind kind : kinds) {
+      if (kind.type == type) return kind;
+    }
+    throw new IllegalArgumentException("Not a primitive type: " + type);
+  }
+}
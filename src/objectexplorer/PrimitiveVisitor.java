@@ -0,0 +1,52 @@
+package objectexplorer;
+
+import java.lang.reflect.Field;
+
+/**
+ * An optional extension of {@link EdgeVisitor}, through which primitive values
+ * are delivered without being boxed.
+ *
+ * <p>If an {@code EdgeVisitor} also implements this interface, and the
+ * traversal is asked to visit primitives (through
+ * {@link ObjectExplorer.Feature#VISIT_PRIMITIVES}), primitive fields are
+ * reported through the typed {@code visitXxx} methods instead of
+ * {@link EdgeVisitor#visit(Edge)}, and primitive arrays are first reported as a
+ * whole, through {@link #visitPrimitiveArray(Object, Class, int)}, which may
+ * decline to see the individual elements. Without {@code VISIT_PRIMITIVES},
+ * primitive fields and arrays are not read at all.
+ *
+ * <p>In the typed methods, {@code parent} is the object or array that contains
+ * the value, and exactly one of {@code field} (non-null) and {@code index}
+ * (non-negative) denotes where the value resides within {@code parent}.
+ *
+ * @see ObjectExplorer#exploreObject(Object, EdgeVisitor, java.util.EnumSet)
+ */
+public interface PrimitiveVisitor {
+  /**
+   * Visits an array with a primitive component type, and decides whether its
+   * elements should be visited individually.
+   *
+   * @param array the array
+   * @param componentType the (primitive) component type of the array
+   * @param length the length of the array
+   * @return {@code true} if each element should be passed to the respective
+   * typed method, or {@code false} if the array has been fully accounted for
+   */
+  boolean visitPrimitiveArray(Object array, Class<?> componentType, int length);
+
+  void visitBoolean(Object parent, Field field, int index, boolean value);
+
+  void visitByte(Object parent, Field field, int index, byte value);
+
+  void visitChar(Object parent, Field field, int index, char value);
+
+  void visitShort(Object parent, Field field, int index, short value);
+
+  void visitInt(Object parent, Field field, int index, int value);
+
+  void visitFloat(Object parent, Field field, int index, float value);
+
+  void visitLong(Object parent, Field field, int index, long value);
+
+  void visitDouble(Object parent, Field field, int index, double value);
+}
@@ -0,0 +1,485 @@
+package objectexplorer;
+
+import objectexplorer.ObjectVisitor.Traversal;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Finds out which objects of an object graph keep which part of its memory
+ * footprint alive. An object <em>dominates</em> another if every path from the
+ * root to the latter goes through the former; the <em>retained size</em> of
+ * an object is the total size of the objects it dominates (itself included),
+ * i.e. the memory that would become unreachable if that object was not
+ * referenced any more.
+ *
+ * <p>The object graph is defined as in {@link MemoryMeasurer#measureBytes(
+ * Object, Predicate)}, and the retained size of the root is the footprint
+ * measured by that method. The graph is recorded in a compact, int-indexed
+ * form (each object is numbered in the order it is reached, and each
+ * reference is a pair of numbers), from which the dominator tree is computed
+ * by the algorithm of Lengauer and Tarjan. {@link Chain}s are only constructed
+ * for the objects that are reported, from the spanning tree of the traversal.
+ *
+ * <p>The analysis keeps the objects of the graph strongly reachable, until it
+ * is itself no longer referenced.
+ *
+ * @see #analyze(Object, Predicate)
+ */
+public final class RetainedSizeAnalyzer {
+  private final ObjectIndex index;
+  // for each object: the object it was reached from, and the field or index it was reached through
+  private final int[] treeParents;
+  private final int[] via;
+  private final Field[] fields;
+  private final int[] immediateDominators;
+  private final long[] retainedSizes;
+
+  private RetainedSizeAnalyzer(GraphRecorder graph) {
+    this.index = graph.index;
+    this.treeParents = graph.treeParents.toArray();
+    this.via = graph.via.toArray();
+    this.fields = graph.fields.toArray(new Field[graph.fields.size()]);
+    int n = index.size();
+    this.immediateDominators = dominators(n, treeParents, predecessors(n, graph.edges));
+    this.retainedSizes = new long[n];
+    for (int v = 0; v < n; v++) {
+      retainedSizes[v] = MemoryMeasurer.sizeOf(index.get(v));
+    }
+    // an immediate dominator is always reached before the objects it dominates
+    for (int w = n - 1; w > 0; w--) {
+      retainedSizes[immediateDominators[w]] += retainedSizes[w];
+    }
+  }
+
+  /**
+   * Analyzes the object graph defined by a root object and whatever object
+   * can be reached through that, excluding static fields, {@code Class}
+   * objects, and fields defined in {@code enum}s.
+   *
+   * <p>Equivalent to {@code analyze(rootObject, Predicates.alwaysTrue())}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * analyzed
+   * @return the analysis of the object graph
+   */
+  public static RetainedSizeAnalyzer analyze(Object rootObject) {
+    return analyze(rootObject, Predicates.alwaysTrue());
+  }
+
+  /**
+   * Analyzes the object graph defined by a root object and whatever object
+   * can be reached through that, excluding static fields, {@code Class}
+   * objects, and fields defined in {@code enum}s, and any object for which
+   * the user-provided predicate returns {@code false}.
+   *
+   * @param rootObject the root object that defines the object graph to be
+   * analyzed
+   * @param objectAcceptor a predicate that returns {@code true} for objects
+   * to be explored (and treated as part of the object graph), or
+   * {@code false} to forbid the traversal to traverse the given object
+   * @return the analysis of the object graph
+   */
+  public static RetainedSizeAnalyzer analyze(Object rootObject,
+      Predicate<Object> objectAcceptor) {
+    Preconditions.checkNotNull(rootObject, "rootObject");
+    Preconditions.checkNotNull(objectAcceptor, "predicate");
+
+    GraphRecorder graph = new GraphRecorder(objectAcceptor);
+    ObjectExplorer.exploreObject(rootObject, graph);
+    return new RetainedSizeAnalyzer(graph);
+  }
+
+  /**
+   * Returns the number of objects in the analyzed graph.
+   */
+  public int objectCount() {
+    return index.size();
+  }
+
+  /**
+   * Returns the memory footprint, in bytes, of the analyzed graph, i.e. the
+   * retained size of its root.
+   */
+  public long totalBytes() {
+    return index.size() == 0 ? 0 : retainedSizes[0];
+  }
+
+  /**
+   * Returns the retained size, in bytes, of an object of the analyzed graph.
+   *
+   * @throws IllegalArgumentException if the object is not part of the graph
+   */
+  public long retainedBytes(Object object) {
+    return retainedSizes[numberOf(object)];
+  }
+
+  /**
+   * Returns the immediate dominator of an object of the analyzed graph: the
+   * object closest to it that every path from the root to it goes through,
+   * or {@code null} if it is the root.
+   *
+   * @throws IllegalArgumentException if the object is not part of the graph
+   */
+  public @Nullable Object immediateDominator(Object object) {
+    int dominator = immediateDominators[numberOf(object)];
+    return dominator < 0 ? null : index.get(dominator);
+  }
+
+  /**
+   * Returns the (at most) {@code n} objects of the analyzed graph, apart from
+   * its root, with the largest retained sizes, largest first.
+   */
+  public List<Dominator> topDominators(int n) {
+    Preconditions.checkArgument(n >= 0, "Negative n");
+    int[] top = largest(retainedSizes, 1, index.size(), n);
+    ImmutableList.Builder<Dominator> dominators = ImmutableList.builder();
+    for (int v : top) {
+      Object object = index.get(v);
+      dominators.add(new Dominator(object, retainedSizes[v], MemoryMeasurer.sizeOf(object),
+          chainOf(v)));
+    }
+    return dominators.build();
+  }
+
+  private int numberOf(Object object) {
+    Preconditions.checkNotNull(object);
+    int number = index.numberOf(object);
+    Preconditions.checkArgument(number >= 0, "Not part of the analyzed graph: %s", object);
+    return number;
+  }
+
+  /**
+   * Returns the chain through which the traversal reached the given object.
+   */
+  private Chain chainOf(int v) {
+    int depth = 0;
+    for (int u = v; treeParents[u] >= 0; u = treeParents[u]) {
+      depth++;
+    }
+    int[] path = new int[depth];
+    for (int u = v, i = depth - 1; i >= 0; u = treeParents[u], i--) {
+      path[i] = u;
+    }
+    Chain chain = Chain.root(index.get(0));
+    for (int u : path) {
+      int through = via[u];
+      chain = through < 0
+          ? chain.appendField(fields[~through], index.get(u))
+          : chain.appendArrayIndex(through, index.get(u));
+    }
+    return chain;
+  }
+
+  /**
+   * Returns, in compressed sparse row form, the predecessors of each object:
+   * those of object {@code v} are {@code preds[starts[v]]} to
+   * {@code preds[starts[v + 1] - 1]}, where {@code starts} is the last
+   * (extra) row of the returned array.
+   */
+  private static int[][] predecessors(int n, IntPairList edges) {
+    int m = edges.size;
+    int[] starts = new int[n + 1];
+    for (int e = 0; e < m; e++) {
+      starts[edges.second[e] + 1]++;
+    }
+    for (int v = 0; v < n; v++) {
+      starts[v + 1] += starts[v];
+    }
+    int[] next = Arrays.copyOf(starts, n);
+    int[] preds = new int[m];
+    for (int e = 0; e < m; e++) {
+      preds[next[edges.second[e]]++] = edges.first[e];
+    }
+    return new int[][] { preds, starts };
+  }
+
+  /**
+   * Computes the immediate dominators of a graph whose objects are numbered in
+   * depth-first preorder, with the given depth-first spanning tree, following
+   * the (simple version of the) algorithm of Lengauer and Tarjan. Since the
+   * numbers are preorder numbers, semidominators are kept as object numbers.
+   */
+  private static int[] dominators(int n, int[] parents, int[][] predecessors) {
+    return new LengauerTarjan(n).run(parents, predecessors[0], predecessors[1]);
+  }
+
+  private static final class LengauerTarjan {
+    final int[] semi;
+    final int[] label;
+    final int[] ancestor;
+    int[] stack = new int[16];
+
+    LengauerTarjan(int n) {
+      semi = new int[n];
+      label = new int[n];
+      ancestor = new int[n];
+      for (int v = 0; v < n; v++) {
+        semi[v] = v;
+        label[v] = v;
+        ancestor[v] = -1;
+      }
+    }
+
+    int[] run(int[] parents, int[] preds, int[] starts) {
+      int n = semi.length;
+      int[] idom = new int[n];
+      int[] bucketHead = new int[n];
+      int[] bucketNext = new int[n];
+      Arrays.fill(bucketHead, -1);
+      for (int w = n - 1; w > 0; w--) {
+        int p = parents[w];
+        for (int i = starts[w]; i < starts[w + 1]; i++) {
+          int u = eval(preds[i]);
+          if (semi[u] < semi[w]) {
+            semi[w] = semi[u];
+          }
+        }
+        bucketNext[w] = bucketHead[semi[w]];
+        bucketHead[semi[w]] = w;
+        ancestor[w] = p;
+        for (int v = bucketHead[p]; v >= 0; v = bucketNext[v]) {
+          int u = eval(v);
+          idom[v] = semi[u] < semi[v] ? u : p;
+        }
+        bucketHead[p] = -1;
+      }
+      for (int w = 1; w < n; w++) {
+        if (idom[w] != semi[w]) {
+          idom[w] = idom[idom[w]];
+        }
+      }
+      if (n > 0) {
+        idom[0] = -1;
+      }
+      return idom;
+    }
+
+    private int eval(int v) {
+      if (ancestor[v] < 0) {
+        return v;
+      }
+      // path compression, done iteratively: the ancestors closest to the root first
+      int depth = 0;
+      for (int x = v; ancestor[ancestor[x]] >= 0; x = ancestor[x]) {
+        if (depth == stack.length) {
+          stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = x;
+      }
+      while (depth > 0) {
+        int x = stack[--depth];
+        int a = ancestor[x];
+        if (semi[label[a]] < semi[label[x]]) {
+          label[x] = label[a];
+        }
+        ancestor[x] = ancestor[a];
+      }
+      return label[v];
+    }
+  }
+
+  /**
+   * Returns the indexes, in {@code [from, to)}, of the (at most) {@code n}
+   * largest values, largest first.
+   */
+  private static int[] largest(long[] values, int from, int to, int n) {
+    // a min-heap of the largest values seen so far
+    int[] heap = new int[Math.min(n, Math.max(to - from, 0))];
+    int size = 0;
+    for (int i = from; i < to; i++) {
+      if (size < heap.length) {
+        heap[size++] = i;
+        siftUp(heap, size - 1, values);
+      } else if (size > 0 && values[i] > values[heap[0]]) {
+        heap[0] = i;
+        siftDown(heap, size, values);
+      }
+    }
+    int[] sorted = new int[size];
+    while (size > 0) {
+      sorted[size - 1] = heap[0];
+      heap[0] = heap[--size];
+      siftDown(heap, size, values);
+    }
+    return sorted;
+  }
+
+  private static void siftUp(int[] heap, int i, long[] values) {
+    int element = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (values[heap[parent]] <= values[element]) break;
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = element;
+  }
+
+  private static void siftDown(int[] heap, int size, long[] values) {
+    if (size == 0) return;
+    int element = heap[0];
+    int i = 0;
+    int child;
+    while ((child = 2 * i + 1) < size) {
+      if (child + 1 < size && values[heap[child + 1]] < values[heap[child]]) {
+        child++;
+      }
+      if (values[element] <= values[heap[child]]) break;
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = element;
+  }
+
+  /**
+   * An object of the analyzed graph, along with the memory it retains.
+   */
+  public static final class Dominator {
+    private final Object object;
+    private final long retainedBytes;
+    private final long shallowBytes;
+    private final Chain chain;
+
+    Dominator(Object object, long retainedBytes, long shallowBytes, Chain chain) {
+      this.object = object;
+      this.retainedBytes = retainedBytes;
+      this.shallowBytes = shallowBytes;
+      this.chain = chain;
+    }
+
+    /**
+     * Returns the dominating object.
+     */
+    public Object getObject() {
+      return object;
+    }
+
+    /**
+     * Returns the retained size, in bytes, of the object.
+     */
+    public long getRetainedBytes() {
+      return retainedBytes;
+    }
+
+    /**
+     * Returns the shallow size, in bytes, of the object.
+     */
+    public long getShallowBytes() {
+      return shallowBytes;
+    }
+
+    /**
+     * Returns a path from the root to the object (the one through which the
+     * traversal reached it).
+     */
+    public Chain getChain() {
+      return chain;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("RetainedBytes", retainedBytes)
+      .add("ShallowBytes", shallowBytes)
+      .add("Chain", chain)
+      .toString();
+    }
+  }
+
+  /**
+   * Records the explored graph: numbers the objects (in the depth-first
+   * preorder of the traversal), and keeps every reference between them as a
+   * pair of numbers, and the spanning tree of the traversal.
+   */
+  private static final class GraphRecorder implements EdgeVisitor<Void> {
+    final Predicate<Edge> filter;
+    final ObjectIndex index = new ObjectIndex();
+    final IntPairList edges = new IntPairList();
+    final IntList treeParents = new IntList();
+    final IntList via = new IntList();
+    final List<Field> fields = new ArrayList<Field>();
+    private final Map<Field, Integer> fieldNumbers = new HashMap<Field, Integer>();
+
+    // consecutive references mostly come from the same object
+    private Object lastParent;
+    private int lastParentNumber;
+
+    GraphRecorder(Predicate<Object> objectAcceptor) {
+      this.filter = ObjectExplorer.measuredEdges(ClassFilter.acceptingAll(), objectAcceptor);
+    }
+
+    public Traversal visit(Edge edge) {
+      if (!filter.apply(edge)) {
+        return Traversal.SKIP;
+      }
+      Object value = edge.getValue();
+      int number = index.add(value);
+      boolean added = number >= 0;
+      if (!added) {
+        number = ~number;
+      }
+      if (edge.hasParent()) {
+        int parent = parentNumber(edge.getParent());
+        edges.add(parent, number);
+        if (added) {
+          treeParents.add(parent);
+          via.add(edge.isThroughField() ? ~fieldNumber(edge.getField()) : edge.getArrayIndex());
+        }
+      } else {
+        treeParents.add(-1);
+        via.add(0);
+      }
+      return added ? Traversal.EXPLORE : Traversal.SKIP;
+    }
+
+    private int parentNumber(Object parent) {
+      if (parent != lastParent) {
+        lastParent = parent;
+        lastParentNumber = index.numberOf(parent);
+      }
+      return lastParentNumber;
+    }
+
+    private int fieldNumber(Field field) {
+      Integer number = fieldNumbers.get(field);
+      if (number == null) {
+        number = fields.size();
+        fields.add(field);
+        fieldNumbers.put(field, number);
+      }
+      return number;
+    }
+
+    public Void result() {
+      return null;
+    }
+  }
+
+  private static final class IntPairList {
+    int[] first = new int[16];
+    int[] second = new int[16];
+    int size;
+
+    void add(int a, int b) {
+      if (size == first.length) {
+        first = Arrays.copyOf(first, size * 2);
+        second = Arrays.copyOf(second, size * 2);
+      }
+      first[size] = a;
+      second[size] = b;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+/**
+ * How an object graph is sampled, instead of being fully explored, when its
+ * size is estimated: the elements of every reference array that is longer
+ * than a threshold are not all explored, but only a random sample of them
+ * (drawn without replacement), whose cost is scaled up to the length of the
+ * array. Arrays of sampled elements may be sampled in turn.
+ *
+ * <p>Estimates assume that the subgraphs reachable from different elements of
+ * a sampled array are mostly disjoint; an object that is shared by the
+ * elements of a sampled array is counted once, but is then scaled up along
+ * with the element that reached it first.
+ *
+ * @see MemoryMeasurer#estimateBytes(Object, com.google.common.base.Predicate, Sampling)
+ * @see ObjectGraphMeasurer#estimate(Object, com.google.common.base.Predicate, Sampling)
+ */
+public final class Sampling {
+  private static final Sampling DEFAULTS = new Sampling(100 * 1000, 10 * 1000, null);
+
+  private final int threshold;
+  private final int sampleSize;
+  private final Long seed;
+
+  private Sampling(int threshold, int sampleSize, @Nullable Long seed) {
+    this.threshold = threshold;
+    this.sampleSize = sampleSize;
+    this.seed = seed;
+  }
+
+  /**
+   * Returns a sampling that samples 10,000 elements of every reference array
+   * that is longer than 100,000 elements. That typically estimates the size of
+   * a large hash table within 2%, with 95% confidence.
+   */
+  public static Sampling defaults() {
+    return DEFAULTS;
+  }
+
+  /**
+   * Returns a sampling that samples {@code sampleSize} elements of every
+   * reference array that is longer than {@code threshold} elements.
+   */
+  public static Sampling of(int threshold, int sampleSize) {
+    Preconditions.checkArgument(threshold > 0, "Non-positive threshold");
+    Preconditions.checkArgument(sampleSize > 1, "The sample size must be at least 2");
+    return new Sampling(threshold, sampleSize, null);
+  }
+
+  /**
+   * Returns a copy of this sampling whose samples are drawn from a random
+   * number generator with the given seed, making estimates repeatable (for
+   * an object graph that does not change).
+   */
+  public Sampling withSeed(long seed) {
+    return new Sampling(threshold, sampleSize, seed);
+  }
+
+  /**
+   * Returns the length above which the elements of reference arrays are
+   * sampled.
+   */
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Returns the number of elements that are sampled from each sampled array.
+   */
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  Random newRandom() {
+    return seed == null ? new Random() : new Random(seed);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("Threshold", threshold)
+    .add("SampleSize", sampleSize)
+    .add("Seed", seed)
+    .toString();
+  }
+}
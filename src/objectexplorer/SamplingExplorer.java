@@ -0,0 +1,177 @@
+package objectexplorer;
+
+import objectexplorer.ObjectExplorer.Feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The sampling mode of object exploration, behind the estimating methods of
+ * {@link MemoryMeasurer} and {@link ObjectGraphMeasurer}.
+ *
+ * <p>The graph is explored in units: the root is the first unit, and each
+ * sampled element of a sampled array is a unit of its own. A {@link Meter}
+ * counts what each unit contains, except for the elements of the reference
+ * arrays it defers (those longer than the {@link Sampling} threshold). The
+ * cost of a deferred array's elements is estimated from a simple random
+ * sample of them: the mean cost of a sampled element, times the length of the
+ * array. Its variance is that of two-stage sampling: the between-element
+ * variance (with the finite population correction), plus the scaled-up
+ * variances of the sampled elements themselves, when they contain sampled
+ * arrays in turn.
+ */
+final class SamplingExplorer {
+  private final Meter meter;
+  private final ObjectWalker walker;
+  private final int sampleSize;
+  private final Random random;
+  private final int metrics;
+
+  private SamplingExplorer(Meter meter, EnumSet<Feature> features, Sampling sampling) {
+    this.meter = meter;
+    this.walker = new ObjectWalker(meter, features);
+    this.sampleSize = sampling.getSampleSize();
+    this.random = sampling.newRandom();
+    this.metrics = meter.metrics;
+  }
+
+  /**
+   * Estimates the counts of the meter over the object graph of the given root.
+   *
+   * @return the estimate of each count of the meter
+   */
+  static Estimate[] explore(Object rootObject, Meter meter, EnumSet<Feature> features,
+      Sampling sampling) {
+    SamplingExplorer explorer = new SamplingExplorer(meter, features, sampling);
+    double[] value = new double[explorer.metrics];
+    double[] variance = new double[explorer.metrics];
+    if (rootObject != null) {
+      explorer.unit(rootObject, null, -1, value, variance);
+    }
+    Estimate[] estimates = new Estimate[explorer.metrics];
+    for (int m = 0; m < estimates.length; m++) {
+      estimates[m] = new Estimate(value[m], Math.sqrt(variance[m]));
+    }
+    return estimates;
+  }
+
+  /**
+   * Estimates a unit: the root (if {@code array} is {@code null}), or the
+   * element of {@code array} at {@code index}, and whatever is reachable from
+   * it. The estimate is added to {@code value} and {@code variance}.
+   */
+  private void unit(Object root, Object[] array, int index, double[] value, double[] variance) {
+    long[] counts = new long[metrics];
+    List<Object[]> deferred = new ArrayList<Object[]>();
+    meter.counts = counts;
+    meter.deferred = deferred;
+    if (array == null) {
+      walker.walk(root);
+    } else {
+      walker.walkSegment(array, null, index, index + 1);
+    }
+    for (int m = 0; m < metrics; m++) {
+      value[m] += counts[m];
+    }
+    for (Object[] deferredArray : deferred) {
+      estimateElements(deferredArray, value, variance);
+    }
+  }
+
+  private void estimateElements(Object[] array, double[] value, double[] variance) {
+    int n = array.length;
+    int[] sample = sample(n, Math.min(sampleSize, n));
+    int k = sample.length;
+    // Welford's running mean and sum of squared deviations, per count
+    double[] mean = new double[metrics];
+    double[] squares = new double[metrics];
+    double[] nestedVariance = new double[metrics];
+    double[] elementValue = new double[metrics];
+    for (int j = 0; j < k; j++) {
+      Arrays.fill(elementValue, 0);
+      unit(null, array, sample[j], elementValue, nestedVariance);
+      for (int m = 0; m < metrics; m++) {
+        double delta = elementValue[m] - mean[m];
+        mean[m] += delta / (j + 1);
+        squares[m] += delta * (elementValue[m] - mean[m]);
+      }
+    }
+    double scale = n / (double) k;
+    double populationCorrection = 1 - k / (double) n;
+    for (int m = 0; m < metrics; m++) {
+      value[m] += n * mean[m];
+      double between = populationCorrection == 0 ? 0
+          : (double) n * n * populationCorrection * (squares[m] / (k - 1)) / k;
+      variance[m] += between + scale * scale * nestedVariance[m];
+    }
+  }
+
+  /**
+   * Draws {@code k} distinct indexes out of {@code [0, n)}, in ascending
+   * order, following Floyd's algorithm.
+   */
+  private int[] sample(int n, int k) {
+    int[] sample = new int[k];
+    if (k == n) {
+      for (int i = 0; i < n; i++) {
+        sample[i] = i;
+      }
+      return sample;
+    }
+    Set<Integer> chosen = new HashSet<Integer>(2 * k);
+    for (int j = n - k; j < n; j++) {
+      int t = random.nextInt(j + 1);
+      if (!chosen.add(t)) {
+        chosen.add(j);
+      }
+    }
+    int i = 0;
+    for (int index : chosen) {
+      sample[i++] = index;
+    }
+    Arrays.sort(sample);
+    return sample;
+  }
+
+  /**
+   * A visitor that counts (one or more quantities of) what it visits, and
+   * defers the large reference arrays it encounters, instead of exploring
+   * their elements.
+   */
+  abstract static class Meter implements EdgeVisitor<Void> {
+    private final int threshold;
+    final int metrics;
+
+    // where the unit being explored is counted
+    long[] counts;
+    List<Object[]> deferred;
+
+    Meter(Sampling sampling, int metrics) {
+      this.threshold = sampling.getThreshold();
+      this.metrics = metrics;
+    }
+
+    /**
+     * Defers the exploration of the elements of the given object, if it is a
+     * large reference array.
+     *
+     * @return whether the object was deferred (and should not be explored)
+     */
+    boolean defer(Object o) {
+      if (o instanceof Object[] && ((Object[]) o).length > threshold) {
+        deferred.add((Object[]) o);
+        return true;
+      }
+      return false;
+    }
+
+    public Void result() {
+      return null;
+    }
+  }
+}
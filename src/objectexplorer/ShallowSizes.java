@@ -0,0 +1,150 @@
+package objectexplorer;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+
+/**
+ * A per-class cache of shallow object sizes, so that sizing an object takes a
+ * lookup rather than a call into the VM.
+ *
+ * <p>All instances of a non-array class have the same size, which is learned
+ * from the first instance that is sized. The size of an array is
+ * {@code align(base + length * scale)}, where the base and the scale only
+ * depend on the array class, and are learned (once per array class) by sizing
+ * a few probe arrays. Sizes are given by the {@link Instrumentation} if the
+ * agent is installed, or by the {@link ObjectLayout} model of the running VM
+ * otherwise.
+ *
+ * <p>The records computed before the agent is installed (say, by
+ * {@link AgentLoader#install()}) are dropped once it is, so that sizes from
+ * the two sources are never mixed, except by a measurement that is running
+ * at that very moment.
+ */
+final class ShallowSizes {
+  private static volatile Records records =
+      new Records(InstrumentationGrabber.instrumentationIfAvailable());
+
+  private static final int alignment = ObjectLayout.current().getObjectAlignment();
+
+  private ShallowSizes() { }
+
+  /**
+   * Returns the (cached) size record of the specified class.
+   */
+  static Record of(Class<?> type) {
+    return records().get(type);
+  }
+
+  /**
+   * Returns the shallow size, in bytes, of the given object.
+   */
+  static long sizeOf(Object o) {
+    return of(o.getClass()).sizeOf(o);
+  }
+
+  /**
+   * Returns the records of the current source of sizes, starting over if the
+   * agent has been installed since they were created.
+   */
+  private static Records records() {
+    Records current = records;
+    if (current.instrumentation == null) {
+      Instrumentation instrumentation = InstrumentationGrabber.instrumentationIfAvailable();
+      if (instrumentation != null) {
+        // racing threads would start over alike, with the same instrumentation
+        records = current = new Records(instrumentation);
+      }
+    }
+    return current;
+  }
+
+  /**
+   * The records of the classes sized so far, from one source of sizes.
+   */
+  private static final class Records extends ClassValue<Record> {
+    final Instrumentation instrumentation; // null to use the ObjectLayout
+
+    Records(Instrumentation instrumentation) {
+      this.instrumentation = instrumentation;
+    }
+
+    @Override
+    protected Record computeValue(Class<?> type) {
+      return new Record(type, instrumentation);
+    }
+  }
+
+  /**
+   * What is known about the size of the instances of a class.
+   */
+  static final class Record {
+    /**
+     * Whether the class is an enum (or the class of an enum constant with a
+     * body).
+     */
+    final boolean isEnum;
+
+    private final boolean isArray;
+    private final Instrumentation instrumentation;
+
+    /*
+     * The size of every instance of a non-array class, or 0 if it has not been
+     * learned yet. Racing threads would learn the same value, and int writes
+     * are atomic, so it need not be volatile.
+     */
+    private int instanceSize;
+
+    // for array classes: the unaligned size of an empty array, and the size of an element
+    private final long arrayBase;
+    private final int arrayScale;
+
+    Record(Class<?> type, Instrumentation instrumentation) {
+      this.isEnum = Enum.class.isAssignableFrom(type);
+      this.isArray = type.isArray();
+      this.instrumentation = instrumentation;
+      ObjectLayout layout = ObjectLayout.current();
+      if (!isArray) {
+        this.arrayBase = 0;
+        this.arrayScale = 0;
+        if (instrumentation == null) {
+          this.instanceSize = (int) layout.instanceSize(type);
+        }
+      } else if (instrumentation == null) {
+        this.arrayScale = layout.sizeOfType(type.getComponentType());
+        this.arrayBase = layout.arrayBaseOffset(arrayScale);
+      } else {
+        // size(n) = align(base + n * scale): any alignment-many elements add
+        // exactly alignment * scale bytes, and the first length that does not
+        // fit in the (aligned) size of an empty array reveals the base
+        Class<?> componentType = type.getComponentType();
+        long emptySize = probe(componentType, 0);
+        this.arrayScale = (int) ((probe(componentType, alignment) - emptySize) / alignment);
+        int length = 1;
+        while (probe(componentType, length) == emptySize) {
+          length++;
+        }
+        this.arrayBase = emptySize - (long) (length - 1) * arrayScale;
+      }
+    }
+
+    private long probe(Class<?> componentType, int length) {
+      return instrumentation.getObjectSize(Array.newInstance(componentType, length));
+    }
+
+    /**
+     * Returns the shallow size, in bytes, of the given instance of the class
+     * of this record.
+     */
+    long sizeOf(Object o) {
+      if (isArray) {
+        long size = arrayBase + (long) Array.getLength(o) * arrayScale;
+        return (size + alignment - 1) & -alignment;
+      }
+      int size = instanceSize;
+      if (size == 0) {
+        instanceSize = size = (int) instrumentation.getObjectSize(o);
+      }
+      return size;
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What changed between two {@link MemorySnapshot snapshots} of an object
+ * graph: the growth of its totals, and of each class and each path whose
+ * instances or bytes changed. Changes are ordered by their growth in bytes,
+ * largest first, so the classes and paths that shrank come last.
+ *
+ * @see MemorySnapshot#diffFrom(MemorySnapshot)
+ */
+public final class SnapshotDiff {
+  private final MemorySnapshot earlier;
+  private final MemorySnapshot later;
+  private final ImmutableList<Change> classChanges;
+  private final ImmutableList<Change> pathChanges;
+
+  SnapshotDiff(MemorySnapshot earlier, MemorySnapshot later) {
+    this.earlier = earlier;
+    this.later = later;
+    this.classChanges = changes(earlier.getClasses(), later.getClasses());
+    this.pathChanges = changes(earlier.getPaths(), later.getPaths());
+  }
+
+  private static ImmutableList<Change> changes(Map<String, MemorySnapshot.Entry> before,
+      Map<String, MemorySnapshot.Entry> after) {
+    List<Change> changes = Lists.newArrayList();
+    for (MemorySnapshot.Entry entry : after.values()) {
+      MemorySnapshot.Entry old = before.get(entry.getKey());
+      Change change = old == null
+          ? new Change(entry.getKey(), 0, 0, entry.getInstances(), entry.getBytes())
+          : new Change(entry.getKey(), old.getInstances(), old.getBytes(),
+              entry.getInstances(), entry.getBytes());
+      if (change.getInstancesGrowth() != 0 || change.getBytesGrowth() != 0) {
+        changes.add(change);
+      }
+    }
+    for (MemorySnapshot.Entry old : before.values()) {
+      if (!after.containsKey(old.getKey())) {
+        changes.add(new Change(old.getKey(), old.getInstances(), old.getBytes(), 0, 0));
+      }
+    }
+    Collections.sort(changes, mostGrowthFirst);
+    return ImmutableList.copyOf(changes);
+  }
+
+  /**
+   * Returns the earlier snapshot.
+   */
+  public MemorySnapshot getEarlier() {
+    return earlier;
+  }
+
+  /**
+   * Returns the later snapshot.
+   */
+  public MemorySnapshot getLater() {
+    return later;
+  }
+
+  /**
+   * Returns the time between the two snapshots, in milliseconds.
+   */
+  public long getElapsedMillis() {
+    return later.getTimeMillis() - earlier.getTimeMillis();
+  }
+
+  /**
+   * Returns how many objects the object graph gained (negative if it lost
+   * some).
+   */
+  public long getInstancesGrowth() {
+    return later.getTotalInstances() - earlier.getTotalInstances();
+  }
+
+  /**
+   * Returns how many bytes the object graph gained (negative if it lost
+   * some).
+   */
+  public long getBytesGrowth() {
+    return later.getTotalBytes() - earlier.getTotalBytes();
+  }
+
+  /**
+   * Returns the changes of all classes that changed, most growth (in bytes)
+   * first.
+   */
+  public ImmutableList<Change> getClassChanges() {
+    return classChanges;
+  }
+
+  /**
+   * Returns the changes of all paths that changed, most growth (in bytes)
+   * first.
+   */
+  public ImmutableList<Change> getPathChanges() {
+    return pathChanges;
+  }
+
+  /**
+   * Returns the changes of the (at most) {@code n} classes that grew the most
+   * in bytes, most growth first. Classes that did not grow are not included.
+   */
+  public ImmutableList<Change> topGrowingClasses(int n) {
+    return topGrowing(classChanges, n);
+  }
+
+  /**
+   * Returns the changes of the (at most) {@code n} paths that grew the most
+   * in bytes, most growth first. Paths that did not grow are not included.
+   */
+  public ImmutableList<Change> topGrowingPaths(int n) {
+    return topGrowing(pathChanges, n);
+  }
+
+  private static ImmutableList<Change> topGrowing(ImmutableList<Change> changes, int n) {
+    Preconditions.checkArgument(n >= 0, "Negative n");
+    int end = 0;
+    while (end < Math.min(n, changes.size()) && changes.get(end).getBytesGrowth() > 0) {
+      end++;
+    }
+    return changes.subList(0, end);
+  }
+
+  /**
+   * Returns the changes as two tables, of classes and of paths.
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(String.format(
+        "Growth over %d ms: %+d instances, %+d bytes%n",
+        getElapsedMillis(), getInstancesGrowth(), getBytesGrowth()));
+    appendTable(sb, "class name", classChanges);
+    appendTable(sb, "path", pathChanges);
+    return sb.toString();
+  }
+
+  private static void appendTable(StringBuilder sb, String keyHeader,
+      ImmutableList<Change> changes) {
+    sb.append(String.format("%n%14s %16s %16s  %s%n",
+        "#instances", "#bytes", "#bytes after", keyHeader));
+    for (Change change : changes) {
+      sb.append(String.format("%+14d %+16d %16d  %s%n", change.getInstancesGrowth(),
+          change.getBytesGrowth(), change.bytesAfter, change.key));
+    }
+  }
+
+  /**
+   * The change of a class or a path between two snapshots.
+   */
+  public static final class Change {
+    private final String key;
+    private final long instancesBefore;
+    private final long bytesBefore;
+    private final long instancesAfter;
+    private final long bytesAfter;
+
+    Change(String key, long instancesBefore, long bytesBefore,
+        long instancesAfter, long bytesAfter) {
+      this.key = key;
+      this.instancesBefore = instancesBefore;
+      this.bytesBefore = bytesBefore;
+      this.instancesAfter = instancesAfter;
+      this.bytesAfter = bytesAfter;
+    }
+
+    /**
+     * Returns the name of the class, or the path.
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * Returns the number of instances in the earlier snapshot.
+     */
+    public long getInstancesBefore() {
+      return instancesBefore;
+    }
+
+    /**
+     * Returns the number of instances in the later snapshot.
+     */
+    public long getInstancesAfter() {
+      return instancesAfter;
+    }
+
+    /**
+     * Returns the number of bytes in the earlier snapshot.
+     */
+    public long getBytesBefore() {
+      return bytesBefore;
+    }
+
+    /**
+     * Returns the number of bytes in the later snapshot.
+     */
+    public long getBytesAfter() {
+      return bytesAfter;
+    }
+
+    /**
+     * Returns how many instances were gained (negative if some were lost).
+     */
+    public long getInstancesGrowth() {
+      return instancesAfter - instancesBefore;
+    }
+
+    /**
+     * Returns how many bytes were gained (negative if some were lost).
+     */
+    public long getBytesGrowth() {
+      return bytesAfter - bytesBefore;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+      .add("Key", key)
+      .add("InstancesGrowth", getInstancesGrowth())
+      .add("BytesGrowth", getBytesGrowth())
+      .add("BytesAfter", bytesAfter)
+      .toString();
+    }
+  }
+
+  private static final Comparator<Change> mostGrowthFirst = new Comparator<Change>() {
+    public int compare(Change a, Change b) {
+      long x = a.getBytesGrowth();
+      long y = b.getBytesGrowth();
+      if (x != y) {
+        return x > y ? -1 : 1;
+      }
+      return a.key.compareTo(b.key);
+    }
+  };
+}
@@ -0,0 +1,31 @@
+package objectexplorer;
+
+/**
+ * An {@link EdgeVisitor} that can be used by a parallel traversal: it can be
+ * split into several visitors, each of which visits a part of the object graph
+ * (possibly concurrently with the others), and whose results are then merged
+ * back.
+ *
+ * <p>Forked visitors typically start with empty results, and share with their
+ * origin whatever state must be consistent across the whole traversal (such as
+ * a {@link ConcurrentIdentitySet} of the objects visited so far), so that
+ * merging all of them yields the same result as a sequential traversal.
+ *
+ * @param <T> the type of the result that this visitor returns
+ * @see ObjectExplorer#exploreObjectInParallel(Object, SplittableEdgeVisitor,
+ * java.util.EnumSet, java.util.concurrent.ForkJoinPool)
+ */
+public interface SplittableEdgeVisitor<T> extends EdgeVisitor<T> {
+  /**
+   * Creates a visitor for another part of the same traversal. It may be used
+   * concurrently with this visitor.
+   */
+  SplittableEdgeVisitor<T> fork();
+
+  /**
+   * Merges into this visitor the results of a visitor that was (directly or
+   * indirectly) forked from it, after that has finished visiting. After this
+   * call, {@code other} is not used again.
+   */
+  void merge(SplittableEdgeVisitor<T> other);
+}
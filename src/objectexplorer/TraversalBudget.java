@@ -0,0 +1,231 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Bounds on how much work a measurement may do: a maximum number of objects, a
+ * maximum number of bytes, a timeout, and a {@link Cancellation} through which
+ * another thread can end the measurement. A measurement also ends (early) if
+ * the thread that runs it is interrupted. Budgets are immutable; each
+ * {@code with*} method returns a new budget.
+ *
+ * <p>A measurement that runs out of budget is not an error: it stops, and
+ * returns what it has measured so far, marked as truncated. The object and
+ * byte bounds are inclusive: a measurement is only truncated by them if an
+ * object beyond them is refused, so an object graph of exactly
+ * {@code maxObjects} objects is measured whole.
+ *
+ * @see MemoryMeasurer#measureBytes(Object, com.google.common.base.Predicate,
+ * TraversalBudget)
+ */
+public final class TraversalBudget {
+  private static final TraversalBudget UNLIMITED =
+      new TraversalBudget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, null);
+
+  /*
+   * The clock, the interrupt status and the cancellation are only consulted
+   * once every this much work: measured objects, plus the elements of the
+   * measured arrays (which the traversal goes through, null or not).
+   */
+  private static final int CHECK_INTERVAL = 1024;
+
+  private final long maxObjects;
+  private final long maxBytes;
+  private final long timeoutNanos;
+  private final Cancellation cancellation;
+
+  private TraversalBudget(long maxObjects, long maxBytes, long timeoutNanos,
+      @Nullable Cancellation cancellation) {
+    this.maxObjects = maxObjects;
+    this.maxBytes = maxBytes;
+    this.timeoutNanos = timeoutNanos;
+    this.cancellation = cancellation;
+  }
+
+  /**
+   * Returns a budget without any bound (apart from thread interruption).
+   */
+  public static TraversalBudget unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * Returns a copy of this budget that allows at most {@code maxObjects}
+   * objects to be measured.
+   */
+  public TraversalBudget withMaxObjects(long maxObjects) {
+    Preconditions.checkArgument(maxObjects > 0, "Non-positive maximum number of objects");
+    return new TraversalBudget(maxObjects, maxBytes, timeoutNanos, cancellation);
+  }
+
+  /**
+   * Returns a copy of this budget that allows at most {@code maxBytes} bytes
+   * to be measured: the measurement ends at the first object that would
+   * exceed them.
+   */
+  public TraversalBudget withMaxBytes(long maxBytes) {
+    Preconditions.checkArgument(maxBytes > 0, "Non-positive maximum number of bytes");
+    return new TraversalBudget(maxObjects, maxBytes, timeoutNanos, cancellation);
+  }
+
+  /**
+   * Returns a copy of this budget that ends the measurement once the given
+   * time has passed since it started.
+   */
+  public TraversalBudget withTimeout(long timeout, TimeUnit unit) {
+    Preconditions.checkArgument(timeout > 0, "Non-positive timeout");
+    return new TraversalBudget(maxObjects, maxBytes, unit.toNanos(timeout), cancellation);
+  }
+
+  /**
+   * Returns a copy of this budget that ends the measurement once the given
+   * cancellation is cancelled.
+   */
+  public TraversalBudget withCancellation(Cancellation cancellation) {
+    Preconditions.checkNotNull(cancellation);
+    return new TraversalBudget(maxObjects, maxBytes, timeoutNanos, cancellation);
+  }
+
+  /**
+   * Starts spending this budget, on behalf of the current thread.
+   */
+  Tracker start() {
+    return new Tracker();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("MaxObjects", maxObjects == Long.MAX_VALUE ? null : maxObjects)
+    .add("MaxBytes", maxBytes == Long.MAX_VALUE ? null : maxBytes)
+    .add("TimeoutNanos", timeoutNanos == Long.MAX_VALUE ? null : timeoutNanos)
+    .add("Cancellation", cancellation)
+    .toString();
+  }
+
+  /**
+   * A flag through which a measurement can be ended from another thread.
+   */
+  public static final class Cancellation {
+    private volatile boolean cancelled;
+
+    /**
+     * Ends any measurement that uses this cancellation. Any measurement that
+     * is started with it afterwards ends immediately.
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Returns whether {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public String toString() {
+      return cancelled ? "cancelled" : "not cancelled";
+    }
+  }
+
+  /**
+   * The bound that ended a measurement.
+   */
+  public enum Exhaustion {
+    /**
+     * An object beyond the maximum number of objects was refused.
+     */
+    MAX_OBJECTS,
+
+    /**
+     * An object that would exceed the maximum number of bytes was refused.
+     */
+    MAX_BYTES,
+
+    /**
+     * The timeout elapsed.
+     */
+    TIMEOUT,
+
+    /**
+     * The cancellation was cancelled.
+     */
+    CANCELLED,
+
+    /**
+     * The measuring thread was interrupted (its interrupt status is left set).
+     */
+    INTERRUPTED
+  }
+
+  /**
+   * The spending of a budget by a single measurement, in a single thread.
+   */
+  final class Tracker {
+    private final Thread thread = Thread.currentThread();
+    private final long start = System.nanoTime();
+    private long objects;
+    private long bytes;
+    private long work;
+    private long nextCheck; // zero, so that the very first object is checked
+    private Exhaustion exhaustion;
+
+    /**
+     * Charges the budget with an object that is about to be measured, unless
+     * the budget does not allow it.
+     *
+     * @return whether the object may be measured; if not, the budget is
+     * exhausted, and the measurement should stop without it
+     */
+    boolean charge(Object o, long size) {
+      if (work >= nextCheck) {
+        nextCheck = work + CHECK_INTERVAL;
+        if (cancellation != null && cancellation.isCancelled()) {
+          exhaustion = Exhaustion.CANCELLED;
+        } else if (thread.isInterrupted()) {
+          exhaustion = Exhaustion.INTERRUPTED;
+        } else if (timeoutNanos != Long.MAX_VALUE
+            && System.nanoTime() - start >= timeoutNanos) {
+          exhaustion = Exhaustion.TIMEOUT;
+        }
+        if (exhaustion != null) {
+          return false;
+        }
+      }
+      if (objects == maxObjects) {
+        exhaustion = Exhaustion.MAX_OBJECTS;
+        return false;
+      }
+      if (size > maxBytes - bytes) {
+        exhaustion = Exhaustion.MAX_BYTES;
+        return false;
+      }
+      objects++;
+      bytes += size;
+      work += o.getClass().isArray() ? 1 + Array.getLength(o) : 1;
+      return true;
+    }
+
+    /**
+     * Returns the number of objects charged so far.
+     */
+    long objects() {
+      return objects;
+    }
+
+    /**
+     * Returns the bound that was exhausted, or {@code null} if none was.
+     */
+    @Nullable Exhaustion exhaustion() {
+      return exhaustion;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package objectexplorer;
+
+import com.google.common.base.Objects;
+
+/**
+ * Metrics of object traversals, that tell where the time of a slow
+ * measurement goes. A {@code TraversalStats} is given to a traversal (e.g.
+ * {@link ObjectExplorer#exploreObject(Object, EdgeVisitor, java.util.EnumSet,
+ * TraversalStats)} or {@link MemoryMeasurer#measureBytes(Object,
+ * com.google.common.base.Predicate, TraversalStats)}), which adds its counts
+ * to it; the traversals that are not given one keep no metrics at all.
+ *
+ * <p>The time spent reading fields reflectively and in the visitor is
+ * estimated by timing a sample of the references (one in
+ * {@value #TIMING_SAMPLE_INTERVAL}), so that timing adds little overhead.
+ *
+ * <p>The counts of several traversals accumulate, and the peaks are the
+ * maximum of theirs. A {@code TraversalStats} is not thread-safe, so it should
+ * only be given to one traversal at a time.
+ */
+public final class TraversalStats {
+  /**
+   * One in so many references is timed.
+   */
+  static final int TIMING_SAMPLE_INTERVAL = 32;
+
+  long objectsExplored;
+  long objectsSkipped;
+  long references;
+  long nulls;
+  long primitives;
+  int peakDepth;
+  int peakVisitedSetSize;
+  long wallNanos;
+
+  // the reference slots (null ones included) that were timed, and how long they took
+  long timedReferences;
+  long fieldReadNanos;
+  long visitNanos;
+
+  /**
+   * Creates an empty {@code TraversalStats}.
+   */
+  public TraversalStats() { }
+
+  /**
+   * Returns the number of objects that were explored (the roots included),
+   * i.e. for which the visitor returned {@link ObjectVisitor.Traversal#EXPLORE}.
+   */
+  public long getObjectsExplored() {
+    return objectsExplored;
+  }
+
+  /**
+   * Returns the number of (non-null) references to objects that were not
+   * explored, because the visitor rejected them (e.g. objects visited
+   * already, or rejected by a predicate). The roots are not counted.
+   */
+  public long getObjectsSkipped() {
+    return objectsSkipped;
+  }
+
+  /**
+   * Returns the number of (non-null) references that were visited, apart from
+   * the roots.
+   */
+  public long getReferences() {
+    return references;
+  }
+
+  /**
+   * Returns the number of {@code null} references that were encountered
+   * (whether or not they were visited).
+   */
+  public long getNulls() {
+    return nulls;
+  }
+
+  /**
+   * Returns the number of primitive values that were visited (only the
+   * traversals that visit primitives count them).
+   */
+  public long getPrimitives() {
+    return primitives;
+  }
+
+  /**
+   * Returns the largest number of objects that were being explored at the
+   * same time, i.e. the depth of the deepest explored path.
+   */
+  public int getPeakDepth() {
+    return peakDepth;
+  }
+
+  /**
+   * Returns the largest size of the set of visited objects, if the traversal
+   * kept one (such as those of {@link MemoryMeasurer} and
+   * {@link ObjectGraphMeasurer}), or zero.
+   */
+  public int getPeakVisitedSetSize() {
+    return peakVisitedSetSize;
+  }
+
+  /**
+   * Returns the (estimated) time spent reading fields reflectively, in
+   * nanoseconds.
+   */
+  public long getReflectionNanos() {
+    return scale(fieldReadNanos);
+  }
+
+  /**
+   * Returns the (estimated) time spent in the visitor, for the references it
+   * visited, in nanoseconds.
+   */
+  public long getVisitorNanos() {
+    return scale(visitNanos);
+  }
+
+  private long scale(long sampledNanos) {
+    long visited = references + nulls;
+    return timedReferences == 0 ? 0 : (long) (sampledNanos * ((double) visited / timedReferences));
+  }
+
+  /**
+   * Returns the time that the traversals took, in nanoseconds.
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  void recordVisitedSetSize(int size) {
+    peakVisitedSetSize = Math.max(peakVisitedSetSize, size);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+    .add("ObjectsExplored", objectsExplored)
+    .add("ObjectsSkipped", objectsSkipped)
+    .add("References", getReferences())
+    .add("Nulls", nulls)
+    .add("Primitives", primitives)
+    .add("PeakDepth", peakDepth)
+    .add("PeakVisitedSetSize", peakVisitedSetSize)
+    .add("ReflectionNanos", getReflectionNanos())
+    .add("VisitorNanos", getVisitorNanos())
+    .add("WallNanos", wallNanos)
+    .toString();
+  }
+}
@@ -60,9 +60,8 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import objectexplorer.GraphMeasurement;
 import objectexplorer.MemoryMeasurer;
-import objectexplorer.ObjectGraphMeasurer;
-import objectexplorer.ObjectGraphMeasurer.Footprint;
 
 public class ElementCostOfDataStructures {
   public static void main(String[] args) throws Exception {
@@ -259,10 +258,10 @@ public class ElementCostOfDataStructures {
   }
 
   static void analyzeOneOff(String caption, Object o) {
-    Footprint footprint = ObjectGraphMeasurer.measure(o);
-    long bytes = MemoryMeasurer.measureBytes(o);
+    GraphMeasurement measurement = MemoryMeasurer.measureAll(o);
     System.out.printf("%40s :: Bytes = %6d, Objects = %5d Refs = %5d Primitives = %s%n",
-        caption, bytes, footprint.getObjects(), footprint.getReferences(), footprint.getPrimitives());
+        caption, measurement.getBytes(), measurement.getObjects(), measurement.getReferences(),
+        measurement.getPrimitives());
   }
 
   static AvgEntryCost averageEntryCost(Populator<?> populator, int initialEntries, int entriesToAdd) {
@@ -273,21 +272,19 @@ public class ElementCostOfDataStructures {
         populator.getEntryType()));
 
     Object collection1 = populator.construct(initialEntries);
-    Footprint footprint1 = ObjectGraphMeasurer.measure(collection1, predicate);
-    long bytes1 = MemoryMeasurer.measureBytes(collection1, predicate);
+    GraphMeasurement measurement1 = MemoryMeasurer.measureAll(collection1, predicate);
 
     Object collection2 = populator.construct(initialEntries + entriesToAdd);
-    Footprint footprint2 = ObjectGraphMeasurer.measure(collection2, predicate);
-    long bytes2 = MemoryMeasurer.measureBytes(collection2, predicate);
+    GraphMeasurement measurement2 = MemoryMeasurer.measureAll(collection2, predicate);
 
-    double objects = (footprint2.getObjects() - footprint1.getObjects()) / (double) entriesToAdd;
-    double refs = (footprint2.getReferences() - footprint1.getReferences()) / (double) entriesToAdd;
-    double bytes = (bytes2 - bytes1) / (double)entriesToAdd;
+    double objects = (measurement2.getObjects() - measurement1.getObjects()) / (double) entriesToAdd;
+    double refs = (measurement2.getReferences() - measurement1.getReferences()) / (double) entriesToAdd;
+    double bytes = (measurement2.getBytes() - measurement1.getBytes()) / (double)entriesToAdd;
 
     Map<Class<?>, Double> primitives = Maps.newHashMap();
     for (Class<?> primitiveType : primitiveTypes) {
-      int initial = footprint1.getPrimitives().count(primitiveType);
-      int ending = footprint2.getPrimitives().count(primitiveType);
+      long initial = measurement1.getPrimitiveCount(primitiveType);
+      long ending = measurement2.getPrimitiveCount(primitiveType);
       if (initial != ending) {
         primitives.put(primitiveType, (ending - initial) / (double) entriesToAdd);
       }
@@ -0,0 +1,255 @@
+package memorymeasurer;
+
+import com.google.common.base.Supplier;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import objectexplorer.Chain;
+import objectexplorer.Edge;
+import objectexplorer.EdgeVisitor;
+import objectexplorer.IdentitySet;
+import objectexplorer.MemoryMeasurer;
+import objectexplorer.ObjectExplorer;
+import objectexplorer.ObjectGraphMeasurer;
+import objectexplorer.ObjectVisitor;
+
+/**
+ * Measures the traversal throughput of {@link ObjectExplorer},
+ * {@link MemoryMeasurer} and {@link ObjectGraphMeasurer} over a few graph
+ * shapes, in objects (nodes) per second, along with the bytes that each
+ * operation allocates per node, so that traversal optimizations can be
+ * compared against a baseline.
+ *
+ * <p>Each operation is run a few times to warm up, and then timed over a few
+ * more rounds, of which the fastest is reported. Allocations are those of the
+ * benchmarking thread, as reported by the HotSpot
+ * {@code com.sun.management.ThreadMXBean} (they are not reported on other
+ * VMs).
+ *
+ * <p>The names of the shapes to run can be given as arguments (all of them
+ * are run by default), e.g. {@code java -cp
+ * dist/object-explorer.jar:lib/guava-r09.jar:build/test/classes
+ * memorymeasurer.TraversalBenchmark DEEP_LIST}. The javaagent is not needed:
+ * without it, {@link MemoryMeasurer} computes sizes from the object layout of
+ * the running VM. To time the sizes that the VM reports instead, add
+ * {@code -javaagent:dist/object-explorer.jar}.
+ */
+public class TraversalBenchmark {
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int ROUNDS = 10;
+
+  public static void main(String[] args) throws Exception {
+    List<String> shapes = Arrays.asList(args);
+    for (Shape shape : Shape.values()) {
+      if (shapes.isEmpty() || shapes.contains(shape.name())) {
+        Object root = shape.get();
+        long nodes = ObjectGraphMeasurer.measure(root).getObjects();
+        caption(String.format("%s (%,d objects)", shape, nodes));
+        for (Operation operation : Operation.values()) {
+          run(operation, root, nodes);
+        }
+      }
+    }
+  }
+
+  private static void caption(String caption) {
+    System.out.println();
+    System.out.println("=============================== " + caption
+        + " ===============================");
+    System.out.println();
+  }
+
+  private static void run(Operation operation, Object root, long nodes) {
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      operation.run(root);
+    }
+    long bestNanos = Long.MAX_VALUE;
+    long allocated = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      operation.run(root);
+      long nanos = System.nanoTime() - start;
+      bestNanos = Math.min(bestNanos, nanos);
+      allocated = allocatedBefore < 0 ? -1
+          : Math.min(allocated, allocatedBytes() - allocatedBefore);
+    }
+    System.out.printf("%32s :: %9.2f ms, %7.2f Mnodes/s, %s%n", operation,
+        bestNanos / 1e6, nodes * 1000.0 / bestNanos,
+        allocated < 0 ? "allocations unknown"
+            : String.format("%8.2f bytes/node allocated", allocated / (double) nodes));
+  }
+
+  /**
+   * Returns the bytes allocated by the current thread so far, or a negative
+   * number if the VM does not tell.
+   */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private enum Operation {
+    EXPLORE_EDGES("exploreObject (EdgeVisitor)") {
+      long run(Object root) {
+        return ObjectExplorer.exploreObject(root, new EdgeCounter());
+      }
+    },
+    EXPLORE_CHAINS("exploreObject (ObjectVisitor)") {
+      long run(Object root) {
+        return ObjectExplorer.exploreObject(root, new ChainCounter());
+      }
+    },
+    MEASURE_BYTES("MemoryMeasurer.measureBytes") {
+      long run(Object root) {
+        return MemoryMeasurer.measureBytes(root);
+      }
+    },
+    MEASURE("ObjectGraphMeasurer.measure") {
+      long run(Object root) {
+        return ObjectGraphMeasurer.measure(root).getObjects();
+      }
+    },
+    MEASURE_ALL("MemoryMeasurer.measureAll") {
+      long run(Object root) {
+        return MemoryMeasurer.measureAll(root).getBytes();
+      }
+    };
+
+    private final String name;
+
+    Operation(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Runs the operation, and returns its result (so that it is not optimized
+     * away).
+     */
+    abstract long run(Object root);
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static class EdgeCounter implements EdgeVisitor<Long> {
+    private final IdentitySet visited = new IdentitySet();
+    private long count;
+
+    public ObjectVisitor.Traversal visit(Edge edge) {
+      Object value = edge.getValue();
+      if (value instanceof Class<?> || !visited.add(value)) {
+        return ObjectVisitor.Traversal.SKIP;
+      }
+      count++;
+      return ObjectVisitor.Traversal.EXPLORE;
+    }
+
+    public Long result() {
+      return count;
+    }
+  }
+
+  private static class ChainCounter implements ObjectVisitor<Long> {
+    private final ObjectExplorer.AtMostOncePredicate atMostOnce =
+        new ObjectExplorer.AtMostOncePredicate();
+    private long count;
+
+    public Traversal visit(Chain chain) {
+      if (chain.getValue() instanceof Class<?> || !atMostOnce.apply(chain)) {
+        return Traversal.SKIP;
+      }
+      count++;
+      return Traversal.EXPLORE;
+    }
+
+    public Long result() {
+      return count;
+    }
+  }
+
+  private enum Shape implements Supplier<Object> {
+    DEEP_LIST {
+      public Object get() {
+        Link head = null;
+        for (int i = 0; i < 1000 * 1000; i++) {
+          head = new Link(head);
+        }
+        return head;
+      }
+    },
+    WIDE_ARRAY {
+      public Object get() {
+        Object[] array = new Object[1000 * 1000];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = new Link(null);
+        }
+        return array;
+      }
+    },
+    HASH_MAP {
+      public Object get() {
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 250 * 1000; i++) {
+          map.put(i, i);
+        }
+        return map;
+      }
+    },
+    TREE_MAP {
+      public Object get() {
+        Map<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < 250 * 1000; i++) {
+          map.put(i, i);
+        }
+        return map;
+      }
+    },
+    PRIMITIVE_ARRAYS {
+      public Object get() {
+        Object[] arrays = new Object[10 * 1000];
+        for (int i = 0; i < arrays.length; i++) {
+          arrays[i] = i % 2 == 0 ? new long[100] : new byte[1000];
+        }
+        return arrays;
+      }
+    },
+    SHARED {
+      public Object get() {
+        // each holder refers to 8 of a few shared objects, so most edges lead to visited objects
+        Random random = new Random(0);
+        Object[] shared = new Object[1000];
+        for (int i = 0; i < shared.length; i++) {
+          shared[i] = new Link(null);
+        }
+        Object[][] holders = new Object[100 * 1000][];
+        for (int i = 0; i < holders.length; i++) {
+          holders[i] = new Object[8];
+          for (int j = 0; j < 8; j++) {
+            holders[i][j] = shared[random.nextInt(shared.length)];
+          }
+        }
+        return holders;
+      }
+    }
+  }
+
+  private static class Link {
+    final Link next;
+
+    Link(Link next) {
+      this.next = next;
+    }
+  }
+}
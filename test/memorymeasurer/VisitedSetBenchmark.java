@@ -0,0 +1,97 @@
+package memorymeasurer;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import objectexplorer.IdentitySet;
+import objectexplorer.MemoryMeasurer;
+
+/**
+ * Compares the memory footprint and the throughput of the visited-set that
+ * {@code ObjectExplorer.AtMostOncePredicate} uses ({@link IdentitySet}) against
+ * the {@code IdentityHashMap}-backed set it used to be.
+ *
+ * <p>Does not need the javaagent: without it, {@link MemoryMeasurer} computes
+ * the footprints from the object layout of the running VM.
+ */
+public class VisitedSetBenchmark {
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws Exception {
+    for (int size : new int[] { 1000, 100 * 1000, 1000 * 1000, 4 * 1000 * 1000 }) {
+      Element[] elements = new Element[size];
+      for (int i = 0; i < size; i++) {
+        elements[i] = new Element();
+      }
+      caption(String.format("%,d objects", size));
+      compare(elements, false);
+      compare(elements, true);
+    }
+  }
+
+  private static void caption(String caption) {
+    System.out.println();
+    System.out.println("========================================== " + caption
+        + " ==========================================");
+    System.out.println();
+  }
+
+  private static void compare(Element[] elements, boolean presized) {
+    Predicate<Object> notElement = Predicates.not(Predicates.instanceOf(Element.class));
+
+    long identityHashMapNanos = Long.MAX_VALUE;
+    long identitySetNanos = Long.MAX_VALUE;
+    Set<Object> identityHashMapSet = null;
+    IdentitySet identitySet = null;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.nanoTime();
+      identityHashMapSet = fill(elements, presized);
+      identityHashMapNanos = Math.min(identityHashMapNanos, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      identitySet = fill(elements, presized ? new IdentitySet(elements.length) : new IdentitySet());
+      identitySetNanos = Math.min(identitySetNanos, System.nanoTime() - start);
+    }
+
+    String sizing = presized ? "presized" : "growing";
+    print("IdentityHashMap (" + sizing + ")", elements.length, identityHashMapNanos,
+        MemoryMeasurer.measureBytes(identityHashMapSet, notElement));
+    print("IdentitySet (" + sizing + ")", elements.length, identitySetNanos,
+        MemoryMeasurer.measureBytes(identitySet, notElement));
+    System.out.printf("%40s :: %,d bytes%n", "IdentitySet.overheadBytes()",
+        identitySet.overheadBytes());
+  }
+
+  private static Set<Object> fill(Element[] elements, boolean presized) {
+    Set<Object> set = Collections.newSetFromMap(presized
+        ? new IdentityHashMap<Object, Boolean>(elements.length)
+        : new IdentityHashMap<Object, Boolean>());
+    // every element is offered twice, as a traversal does with shared objects
+    for (Element element : elements) {
+      set.add(element);
+    }
+    for (Element element : elements) {
+      set.add(element);
+    }
+    return set;
+  }
+
+  private static IdentitySet fill(Element[] elements, IdentitySet set) {
+    for (Element element : elements) {
+      set.add(element);
+    }
+    for (Element element : elements) {
+      set.add(element);
+    }
+    return set;
+  }
+
+  private static void print(String caption, int size, long nanos, long bytes) {
+    System.out.printf("%40s :: %6.1f ns/add, %7.2f Madds/s, %,13d bytes (%5.2f bytes/object)%n",
+        caption, nanos / (2.0 * size), 2000.0 * size / nanos, bytes, bytes / (double) size);
+  }
+
+  private static class Element { }
+}
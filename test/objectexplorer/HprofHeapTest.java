@@ -0,0 +1,125 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import objectexplorer.ObjectGraphMeasurer.Footprint;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link HprofHeap} (and the {@link MappedInput} it reads through),
+ * on a heap dump of this very VM, written by
+ * {@code HotSpotDiagnosticMXBean.dumpHeap}.
+ */
+public class HprofHeapTest {
+  private static final int MARKERS = 1000;
+
+  private static class Marker {
+    final int id;
+    final long stamp;
+    final byte[] payload;
+    Marker next;
+
+    Marker(int id) {
+      this.id = id;
+      this.stamp = id * 31L;
+      this.payload = new byte[id % 10];
+    }
+  }
+
+  // the root of the measured object graph, found in the dump through this static field
+  static Marker[] markers;
+
+  private static File dump;
+
+  @BeforeClass
+  public static void dumpHeap() throws IOException {
+    markers = new Marker[MARKERS];
+    for (int i = 0; i < MARKERS; i++) {
+      markers[i] = new Marker(i);
+      if (i > 0) {
+        markers[i - 1].next = markers[i];
+      }
+    }
+    dump = File.createTempFile("HprofHeapTest", ".hprof");
+    // dumpHeap refuses to overwrite a file
+    dump.delete();
+    HotSpotDiagnosticMXBean diagnostics = ManagementFactory.newPlatformMXBeanProxy(
+        ManagementFactory.getPlatformMBeanServer(),
+        "com.sun.management:type=HotSpotDiagnostic", HotSpotDiagnosticMXBean.class);
+    diagnostics.dumpHeap(dump.getPath(), true);
+  }
+
+  @AfterClass
+  public static void deleteDump() {
+    if (dump != null) {
+      dump.delete();
+    }
+  }
+
+  private static HprofHeap load(int windowSize) throws IOException {
+    return HprofHeap.load(dump, ObjectLayout.current(), windowSize);
+  }
+
+  @Test
+  public void instanceCountsAndShallowSizesOfAKnownClass() throws IOException {
+    HprofHeap heap = load(MappedInput.DEFAULT_WINDOW_SIZE);
+    long rootId = heap.getStaticField(HprofHeapTest.class.getName(), "markers");
+    assertEquals(Marker[].class.getName(), heap.getClassName(rootId));
+
+    ClassHistogram histogram = heap.measureHistogram(rootId);
+    ClassHistogram.Entry entry = histogram.get(Marker.class.getName());
+    assertNotNull(histogram.toString(), entry);
+    assertEquals(MARKERS, entry.getInstances());
+    assertEquals(MARKERS * MemoryMeasurer.sizeOf(markers[0]), entry.getBytes());
+
+    ClassHistogram.Entry arrays = histogram.get(Marker[].class.getName());
+    assertEquals(1, arrays.getInstances());
+    assertEquals(MemoryMeasurer.sizeOf(markers), arrays.getBytes());
+    assertEquals(MARKERS, arrays.getArrayElements());
+
+    long payloadBytes = 0;
+    for (Marker marker : markers) {
+      payloadBytes += MemoryMeasurer.sizeOf(marker.payload);
+    }
+    ClassHistogram.Entry payloads = histogram.get(byte[].class.getName());
+    assertEquals(MARKERS, payloads.getInstances());
+    assertEquals(payloadBytes, payloads.getBytes());
+  }
+
+  @Test
+  public void measuresAsInTheRunningVm() throws IOException {
+    HprofHeap heap = load(MappedInput.DEFAULT_WINDOW_SIZE);
+    long rootId = heap.getStaticField(HprofHeapTest.class.getName(), "markers");
+    assertTrue(heap.getObjectCount() > 2 * MARKERS);
+
+    assertEquals(MemoryMeasurer.measureBytes(markers), heap.measureBytes(rootId));
+    Footprint expected = ObjectGraphMeasurer.measure(markers);
+    Footprint actual = heap.measure(rootId);
+    assertEquals(expected.getObjects(), actual.getObjects());
+    assertEquals(expected.getReferences(), actual.getReferences());
+    assertEquals(expected.getPrimitives(), actual.getPrimitives());
+  }
+
+  @Test
+  public void readsAcrossSmallWindows() throws IOException {
+    HprofHeap whole = load(MappedInput.DEFAULT_WINDOW_SIZE);
+    // records straddle the boundaries of windows this small
+    HprofHeap windowed = load(4096);
+    long rootId = whole.getStaticField(HprofHeapTest.class.getName(), "markers");
+
+    assertEquals(whole.getObjectCount(), windowed.getObjectCount());
+    assertEquals(rootId, windowed.getStaticField(HprofHeapTest.class.getName(), "markers"));
+    assertEquals(whole.measureBytes(rootId), windowed.measureBytes(rootId));
+  }
+}
@@ -0,0 +1,178 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Predicates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link MemorySnapshot} and {@link SnapshotDiff}.
+ */
+public class MemorySnapshotTest {
+  private static class Named {
+    final Object value;
+
+    Named(Object value) {
+      this.value = value;
+    }
+  }
+
+  private static class AlsoNamed {
+    final Object value;
+
+    AlsoNamed(Object value) {
+      this.value = value;
+    }
+  }
+
+  private static class Link {
+    final Link next;
+
+    Link(Link next) {
+      this.next = next;
+    }
+  }
+
+  private static final String ROOT = Object[].class.getName();
+
+  @Test
+  public void totalsAreThoseOfMeasureBytes() {
+    Object[] root = { new Named(new int[3]), new Named(null), new AlsoNamed(new long[2]) };
+    MemorySnapshot snapshot = MemoryMeasurer.snapshot(root);
+
+    assertEquals(MemoryMeasurer.measureBytes(root), snapshot.getTotalBytes());
+    assertEquals(6, snapshot.getTotalInstances());
+    MemorySnapshot.Entry rootPath = snapshot.getPaths().get(ROOT);
+    assertEquals(snapshot.getTotalInstances(), rootPath.getInstances());
+    assertEquals(snapshot.getTotalBytes(), rootPath.getBytes());
+    assertEquals(2, snapshot.getClasses().get(Named.class.getName()).getInstances());
+    assertEquals(2 * MemoryMeasurer.sizeOf(root[0]),
+        snapshot.getClasses().get(Named.class.getName()).getBytes());
+  }
+
+  @Test
+  public void sameNamedFieldsOfDifferentClassesShareAPath() {
+    int[] first = new int[3];
+    long[] second = new long[5];
+    Object[] root = { new Named(first), new AlsoNamed(second) };
+    MemorySnapshot snapshot = MemoryMeasurer.snapshot(root);
+
+    MemorySnapshot.Entry values = snapshot.getPaths().get(ROOT + "->[]->value");
+    assertNotNull(snapshot.getPaths().toString(), values);
+    assertEquals(2, values.getInstances());
+    assertEquals(MemoryMeasurer.sizeOf(first) + MemoryMeasurer.sizeOf(second),
+        values.getBytes());
+  }
+
+  @Test
+  public void stringsAndStringBuildersShareAPath() {
+    Object[] root = { "abc", new StringBuilder("x") };
+    MemorySnapshot snapshot = MemoryMeasurer.snapshot(root);
+
+    assertEquals(2, snapshot.getPaths().get(ROOT + "->[]->value").getInstances());
+
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("a", "abc");
+    map.put("b", new StringBuilder("x"));
+    assertEquals(MemoryMeasurer.measureBytes(map), MemoryMeasurer.snapshot(map).getTotalBytes());
+  }
+
+  @Test
+  public void longerPathsAreCountedInTheTruncatedOnes() {
+    Link list = new Link(new Link(new Link(new Link(null))));
+    MemorySnapshot snapshot = MemoryMeasurer.snapshot(list, Predicates.alwaysTrue(), 2);
+
+    String name = Link.class.getName();
+    assertEquals(3, snapshot.getPaths().size());
+    assertEquals(4, snapshot.getPaths().get(name).getInstances());
+    assertEquals(3, snapshot.getPaths().get(name + "->next").getInstances());
+    // the last two links are attributed to the path of depth 2
+    assertEquals(2, snapshot.getPaths().get(name + "->next->next").getInstances());
+    assertEquals(2 * MemoryMeasurer.sizeOf(list),
+        snapshot.getPaths().get(name + "->next->next").getBytes());
+  }
+
+  @Test
+  public void pathsAreThoseOfAPathProfile() {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("a", new Named(new int[3]));
+    map.put("b", new AlsoNamed("abc"));
+    MemorySnapshot snapshot = MemoryMeasurer.snapshot(map, Predicates.alwaysTrue(), 4);
+    PathProfile profile = MemoryMeasurer.profilePaths(map, Predicates.alwaysTrue(), 4);
+
+    assertEquals(profile.getPaths().size(), snapshot.getPaths().size());
+    for (PathProfile.Entry entry : profile.getPaths()) {
+      MemorySnapshot.Entry path = snapshot.getPaths().get(entry.getPath());
+      assertNotNull(entry.getPath(), path);
+      assertEquals(entry.getTotalInstances(), path.getInstances());
+      assertEquals(entry.getTotalBytes(), path.getBytes());
+    }
+    assertNotNull(snapshot.getPaths().get(HashMap.class.getName() + "->table->[]->value->value"));
+  }
+
+  @Test
+  public void diffShowsWhatGrewAndWhatShrank() {
+    List<Object> list = new ArrayList<Object>();
+    list.add(new Named(null));
+    list.add(new AlsoNamed(null));
+    MemorySnapshot earlier = MemoryMeasurer.snapshot(list);
+    list.remove(1);
+    for (int i = 0; i < 3; i++) {
+      list.add(new Named(new int[10]));
+    }
+    MemorySnapshot later = MemoryMeasurer.snapshot(list);
+    SnapshotDiff diff = later.diffFrom(earlier);
+
+    assertEquals(later.getTotalBytes() - earlier.getTotalBytes(), diff.getBytesGrowth());
+    assertEquals(later.getTotalInstances() - earlier.getTotalInstances(),
+        diff.getInstancesGrowth());
+    assertTrue(diff.getElapsedMillis() >= 0);
+
+    SnapshotDiff.Change named = change(diff.getClassChanges(), Named.class.getName());
+    assertEquals(1, named.getInstancesBefore());
+    assertEquals(4, named.getInstancesAfter());
+    assertEquals(3 * MemoryMeasurer.sizeOf(list.get(0)), named.getBytesGrowth());
+
+    // the class that is gone comes last, with all of its bytes lost
+    List<SnapshotDiff.Change> classChanges = diff.getClassChanges();
+    SnapshotDiff.Change gone = classChanges.get(classChanges.size() - 1);
+    assertEquals(AlsoNamed.class.getName(), gone.getKey());
+    assertEquals(0, gone.getInstancesAfter());
+    assertEquals(-MemoryMeasurer.sizeOf(new AlsoNamed(null)), gone.getBytesGrowth());
+
+    for (SnapshotDiff.Change change : diff.topGrowingClasses(10)) {
+      assertTrue(change.getBytesGrowth() > 0);
+      assertFalse(change.getKey().equals(AlsoNamed.class.getName()));
+    }
+    assertEquals(ArrayList.class.getName(), diff.topGrowingPaths(1).get(0).getKey());
+  }
+
+  private static SnapshotDiff.Change change(List<SnapshotDiff.Change> changes, String key) {
+    for (SnapshotDiff.Change change : changes) {
+      if (change.getKey().equals(key)) {
+        return change;
+      }
+    }
+    throw new AssertionError("No change of " + key + " in " + changes);
+  }
+
+  @Test
+  public void diffOfUnchangedGraphIsEmpty() {
+    Object[] root = { new Named(new int[3]), new AlsoNamed(null) };
+    SnapshotDiff diff = MemoryMeasurer.snapshot(root).diffFrom(MemoryMeasurer.snapshot(root));
+
+    assertEquals(0, diff.getBytesGrowth());
+    assertTrue(diff.getClassChanges().isEmpty());
+    assertTrue(diff.getPathChanges().isEmpty());
+    assertTrue(diff.topGrowingPaths(5).isEmpty());
+  }
+}
@@ -0,0 +1,74 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ObjectIndex}.
+ */
+public class ObjectIndexTest {
+  @Test
+  public void numbersObjectsInOrderOfAddition() {
+    ObjectIndex index = new ObjectIndex();
+    Object a = new Object();
+    Object b = new Object();
+    assertEquals(0, index.add(a));
+    assertEquals(1, index.add(b));
+    assertEquals(2, index.size());
+    assertSame(a, index.get(0));
+    assertSame(b, index.get(1));
+    assertEquals(0, index.numberOf(a));
+    assertEquals(1, index.numberOf(b));
+  }
+
+  @Test
+  public void addingAgainReturnsTheComplementOfTheNumber() {
+    ObjectIndex index = new ObjectIndex();
+    Object a = new Object();
+    index.add(new Object());
+    index.add(a);
+    assertEquals(~1, index.add(a));
+    assertEquals(2, index.size());
+  }
+
+  @Test
+  public void comparesByIdentity() {
+    ObjectIndex index = new ObjectIndex();
+    String a = new String("a");
+    String equalToA = new String("a");
+    assertEquals(0, index.add(a));
+    assertEquals(-1, index.numberOf(equalToA));
+    assertEquals(1, index.add(equalToA));
+  }
+
+  @Test
+  public void keepsNumbersAcrossResizes() {
+    ObjectIndex index = new ObjectIndex(0);
+    Object[] objects = new Object[10000];
+    for (int i = 0; i < objects.length; i++) {
+      objects[i] = new Object();
+      assertEquals(i, index.add(objects[i]));
+    }
+    assertEquals(objects.length, index.size());
+    for (int i = 0; i < objects.length; i++) {
+      assertEquals(i, index.numberOf(objects[i]));
+      assertSame(objects[i], index.get(i));
+      assertEquals(~i, index.add(objects[i]));
+    }
+    assertEquals(-1, index.numberOf(new Object()));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsNumbersNotGiven() {
+    ObjectIndex index = new ObjectIndex();
+    index.add(new Object());
+    index.get(1);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void rejectsNull() {
+    new ObjectIndex().add(null);
+  }
+}
@@ -0,0 +1,162 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OwnershipAnalysis}, through
+ * {@link MemoryMeasurer#measureRoots(Map)}, and {@link MultiRootMeasurement}.
+ */
+public class OwnershipAnalysisTest {
+  private static class Node {
+    Node left;
+    Node right;
+
+    Node() { }
+
+    Node(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+
+  private static long sizeOf(Object... objects) {
+    long size = 0;
+    for (Object o : objects) {
+      size += MemoryMeasurer.sizeOf(o);
+    }
+    return size;
+  }
+
+  private static void assertBytes(long exclusiveBytes, long sharedBytes,
+      MultiRootMeasurement.RootBytes bytes) {
+    assertEquals(exclusiveBytes, bytes.getExclusiveBytes());
+    assertEquals(sharedBytes, bytes.getSharedBytes());
+    assertEquals(exclusiveBytes + sharedBytes, bytes.getTotalBytes());
+  }
+
+  @Test
+  public void overlappingRoots() {
+    Node shared = new Node(new Node(), null);
+    Node onlyA = new Node();
+    Node onlyB = new Node(new Node(), new Node());
+    Node a = new Node(shared, onlyA);
+    Node b = new Node(onlyB, shared);
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.of("a", a, "b", b));
+
+    long sharedSize = MemoryMeasurer.measureBytes(shared);
+    assertBytes(sizeOf(a, onlyA), sharedSize, measurement.get("a"));
+    assertBytes(MemoryMeasurer.measureBytes(onlyB) + sizeOf(b), sharedSize, measurement.get("b"));
+    assertEquals(MemoryMeasurer.measureBytes(a), measurement.get("a").getTotalBytes());
+    assertEquals(MemoryMeasurer.measureBytes(b), measurement.get("b").getTotalBytes());
+    assertEquals(sharedSize, measurement.getSharedBytes());
+    assertEquals(MemoryMeasurer.measureBytes(new Object[] { a, b })
+        - MemoryMeasurer.sizeOf(new Object[2]), measurement.getUnionBytes());
+  }
+
+  @Test
+  public void disjointRoots() {
+    Node a = new Node(new Node(), null);
+    Node b = new Node();
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.of("a", a, "b", b));
+
+    assertBytes(MemoryMeasurer.measureBytes(a), 0, measurement.get("a"));
+    assertBytes(sizeOf(b), 0, measurement.get("b"));
+    assertEquals(0, measurement.getSharedBytes());
+    assertEquals(MemoryMeasurer.measureBytes(a) + sizeOf(b), measurement.getUnionBytes());
+  }
+
+  @Test
+  public void rootReachableFromAnotherRootMeasuredFirst() {
+    Node leaf = new Node();
+    Node inner = new Node(leaf, null);
+    Node outerOnly = new Node();
+    Node outer = new Node(inner, outerOnly);
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.of("outer", outer, "inner", inner));
+
+    assertBytes(sizeOf(outer, outerOnly), sizeOf(inner, leaf), measurement.get("outer"));
+    assertBytes(0, sizeOf(inner, leaf), measurement.get("inner"));
+    assertEquals(sizeOf(inner, leaf), measurement.getSharedBytes());
+    assertEquals(sizeOf(outer, outerOnly, inner, leaf), measurement.getUnionBytes());
+  }
+
+  @Test
+  public void rootReachableFromAnotherRootMeasuredLater() {
+    Node leaf = new Node();
+    Node inner = new Node(leaf, null);
+    Node outerOnly = new Node();
+    Node outer = new Node(inner, outerOnly);
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.of("inner", inner, "outer", outer));
+
+    assertBytes(0, sizeOf(inner, leaf), measurement.get("inner"));
+    assertBytes(sizeOf(outer, outerOnly), sizeOf(inner, leaf), measurement.get("outer"));
+    assertEquals(sizeOf(inner, leaf), measurement.getSharedBytes());
+    assertEquals(sizeOf(outer, outerOnly, inner, leaf), measurement.getUnionBytes());
+  }
+
+  @Test
+  public void manyReferencesToASharedObject() {
+    Node shared = new Node(new Node(), null);
+    Node[] a = new Node[1000];
+    Node[] b = new Node[1000];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = new Node(shared, shared);
+      b[i] = new Node(null, shared);
+    }
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.<String, Object>of("a", a, "b", b));
+
+    long sharedSize = MemoryMeasurer.measureBytes(shared);
+    assertBytes(MemoryMeasurer.measureBytes(a) - sharedSize, sharedSize, measurement.get("a"));
+    assertBytes(MemoryMeasurer.measureBytes(b) - sharedSize, sharedSize, measurement.get("b"));
+    assertEquals(sharedSize, measurement.getSharedBytes());
+  }
+
+  @Test
+  public void rootsReachableFromEachOther() {
+    Node a = new Node();
+    Node b = new Node(a, new Node());
+    a.left = b;
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.of("a", a, "b", b));
+
+    long all = MemoryMeasurer.measureBytes(a);
+    assertBytes(0, all, measurement.get("a"));
+    assertBytes(0, all, measurement.get("b"));
+    assertEquals(all, measurement.getSharedBytes());
+    assertEquals(all, measurement.getUnionBytes());
+  }
+
+  @Test
+  public void identicalRoots() {
+    Node root = new Node(new Node(), new Node(new Node(), null));
+    MultiRootMeasurement<String> measurement =
+        MemoryMeasurer.measureRoots(ImmutableMap.of("first", root, "second", root));
+
+    long all = MemoryMeasurer.measureBytes(root);
+    assertBytes(0, all, measurement.get("first"));
+    assertBytes(0, all, measurement.get("second"));
+    assertEquals(all, measurement.getSharedBytes());
+    assertEquals(all, measurement.getUnionBytes());
+  }
+
+  @Test
+  public void nullRootIsAnEmptyGraph() {
+    Map<String, Node> roots = Collections.singletonMap("null", null);
+    MultiRootMeasurement<String> measurement = MemoryMeasurer.measureRoots(roots);
+
+    assertBytes(0, 0, measurement.get("null"));
+    assertEquals(0, measurement.getSharedBytes());
+    assertEquals(0, measurement.getUnionBytes());
+  }
+}
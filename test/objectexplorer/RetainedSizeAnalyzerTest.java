@@ -0,0 +1,146 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RetainedSizeAnalyzer}.
+ */
+public class RetainedSizeAnalyzerTest {
+  private static class Node {
+    Node left;
+    Node right;
+
+    Node() { }
+
+    Node(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+
+  private static long sizeOf(Object... objects) {
+    long size = 0;
+    for (Object o : objects) {
+      size += MemoryMeasurer.sizeOf(o);
+    }
+    return size;
+  }
+
+  @Test
+  public void diamond() {
+    Node bottom = new Node();
+    Node left = new Node(bottom, null);
+    Node right = new Node(null, bottom);
+    Node root = new Node(left, right);
+    RetainedSizeAnalyzer analyzer = RetainedSizeAnalyzer.analyze(root);
+
+    assertEquals(4, analyzer.objectCount());
+    assertSame(root, analyzer.immediateDominator(left));
+    assertSame(root, analyzer.immediateDominator(right));
+    assertSame(root, analyzer.immediateDominator(bottom));
+    assertEquals(sizeOf(left), analyzer.retainedBytes(left));
+    assertEquals(sizeOf(right), analyzer.retainedBytes(right));
+    assertEquals(sizeOf(bottom), analyzer.retainedBytes(bottom));
+    assertEquals(sizeOf(root, left, right, bottom), analyzer.retainedBytes(root));
+    assertEquals(MemoryMeasurer.measureBytes(root), analyzer.totalBytes());
+  }
+
+  @Test
+  public void cycle() {
+    // root -> a -> b -> c -> a, and c -> root
+    Node c = new Node();
+    Node b = new Node(c, null);
+    Node a = new Node(b, null);
+    Node root = new Node(a, null);
+    c.left = a;
+    c.right = root;
+    RetainedSizeAnalyzer analyzer = RetainedSizeAnalyzer.analyze(root);
+
+    assertEquals(4, analyzer.objectCount());
+    assertSame(root, analyzer.immediateDominator(a));
+    assertSame(a, analyzer.immediateDominator(b));
+    assertSame(b, analyzer.immediateDominator(c));
+    assertEquals(sizeOf(c), analyzer.retainedBytes(c));
+    assertEquals(sizeOf(a, b, c), analyzer.retainedBytes(a));
+    assertEquals(sizeOf(root, a, b, c), analyzer.totalBytes());
+  }
+
+  @Test
+  public void selfLoop() {
+    Node loop = new Node();
+    loop.left = loop;
+    Node leaf = new Node();
+    loop.right = leaf;
+    Node root = new Node(loop, null);
+    RetainedSizeAnalyzer analyzer = RetainedSizeAnalyzer.analyze(root);
+
+    assertEquals(3, analyzer.objectCount());
+    assertSame(root, analyzer.immediateDominator(loop));
+    assertSame(loop, analyzer.immediateDominator(leaf));
+    assertEquals(sizeOf(loop, leaf), analyzer.retainedBytes(loop));
+    assertEquals(sizeOf(root, loop, leaf), analyzer.totalBytes());
+  }
+
+  @Test
+  public void sharedLeaf() {
+    Node leaf = new Node();
+    Node[] holders = new Node[5];
+    for (int i = 0; i < holders.length; i++) {
+      holders[i] = new Node(leaf, null);
+    }
+    RetainedSizeAnalyzer analyzer = RetainedSizeAnalyzer.analyze(holders);
+
+    assertEquals(holders.length + 2, analyzer.objectCount());
+    // no single holder retains the leaf: only the array, through which all paths go
+    assertSame(holders, analyzer.immediateDominator(leaf));
+    for (Node holder : holders) {
+      assertSame(holders, analyzer.immediateDominator(holder));
+      assertEquals(sizeOf(holder), analyzer.retainedBytes(holder));
+    }
+    assertEquals(sizeOf(leaf), analyzer.retainedBytes(leaf));
+    assertEquals(MemoryMeasurer.measureBytes(holders), analyzer.totalBytes());
+  }
+
+  @Test
+  public void rootThatIsItsOwnOnlyDominator() {
+    Node root = new Node();
+    root.left = root;
+    root.right = root;
+    RetainedSizeAnalyzer analyzer = RetainedSizeAnalyzer.analyze(root);
+
+    assertEquals(1, analyzer.objectCount());
+    assertNull(analyzer.immediateDominator(root));
+    assertEquals(sizeOf(root), analyzer.retainedBytes(root));
+    assertEquals(sizeOf(root), analyzer.totalBytes());
+    assertTrue(analyzer.topDominators(10).isEmpty());
+  }
+
+  @Test
+  public void topDominatorsAreTheLargestFirst() {
+    Node small = new Node();
+    Node large = new Node(new Node(new Node(), new Node()), new Node());
+    Node root = new Node(small, large);
+    RetainedSizeAnalyzer analyzer = RetainedSizeAnalyzer.analyze(root);
+
+    List<RetainedSizeAnalyzer.Dominator> top = analyzer.topDominators(2);
+    assertEquals(2, top.size());
+    assertSame(large, top.get(0).getObject());
+    assertEquals(analyzer.retainedBytes(large), top.get(0).getRetainedBytes());
+    assertEquals(sizeOf(large), top.get(0).getShallowBytes());
+    assertSame(large, top.get(0).getChain().getValue());
+    assertSame(root, top.get(0).getChain().getRoot());
+    assertTrue(top.get(0).getRetainedBytes() >= top.get(1).getRetainedBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsObjectsOutsideTheGraph() {
+    RetainedSizeAnalyzer.analyze(new Node()).retainedBytes(new Node());
+  }
+}
@@ -0,0 +1,113 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Predicates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for the estimates that {@link SamplingExplorer} makes, as specified by
+ * a {@link Sampling}.
+ */
+public class SamplingTest {
+  private static final Sampling SAMPLING = Sampling.of(100 * 1000, 10 * 1000).withSeed(42);
+
+  /**
+   * Returns a hash map whose table is longer than the threshold of
+   * {@link #SAMPLING}, with values of various sizes.
+   */
+  private static Map<Integer, int[]> largeHashMap() {
+    Map<Integer, int[]> map = new HashMap<Integer, int[]>();
+    for (int i = 0; i < 200 * 1000; i++) {
+      map.put(i, new int[i % 16]);
+    }
+    return map;
+  }
+
+  @Test
+  public void intervalCoversTheExactBytesOfALargeHashMap() {
+    Map<Integer, int[]> map = largeHashMap();
+    long exact = MemoryMeasurer.measureBytes(map);
+    Estimate estimate = MemoryMeasurer.estimateBytes(map, Predicates.alwaysTrue(), SAMPLING);
+
+    assertFalse(estimate.isExact());
+    assertTrue(estimate + " does not cover " + exact,
+        estimate.getLowerBound() <= exact && exact <= estimate.getUpperBound());
+    assertTrue(estimate.toString(), estimate.getRelativeError() < 0.05);
+  }
+
+  @Test
+  public void intervalCoversTheExactFootprintOfALargeHashMap() {
+    Map<Integer, int[]> map = largeHashMap();
+    ObjectGraphMeasurer.Footprint exact = ObjectGraphMeasurer.measure(map);
+    ObjectGraphMeasurer.FootprintEstimate estimate =
+        ObjectGraphMeasurer.estimate(map, Predicates.alwaysTrue(), SAMPLING);
+
+    assertCovers(exact.getObjects(), estimate.getObjects());
+    assertCovers(exact.getReferences(), estimate.getReferences());
+    assertCovers(exact.getPrimitiveCount(int.class), estimate.getPrimitives().get(int.class));
+  }
+
+  @Test
+  public void sameSeedMakesTheSameEstimate() {
+    Map<Integer, int[]> map = largeHashMap();
+    Estimate first = MemoryMeasurer.estimateBytes(map, Predicates.alwaysTrue(), SAMPLING);
+    Estimate second = MemoryMeasurer.estimateBytes(map, Predicates.alwaysTrue(), SAMPLING);
+
+    assertEquals(first.getValue(), second.getValue(), 0.0);
+    assertEquals(first.getStandardError(), second.getStandardError(), 0.0);
+  }
+
+  @Test
+  public void collectionsBelowTheThresholdAreExact() {
+    // the longest array here is the table of the map, of 1024 slots
+    Sampling sampling = Sampling.of(1024, 100).withSeed(42);
+    Map<Integer, int[]> map = new HashMap<Integer, int[]>();
+    for (int i = 0; i < 500; i++) {
+      map.put(i, new int[i % 16]);
+    }
+    List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 500; i++) {
+      list.add(new int[i % 16]);
+    }
+    list.add(map);
+
+    Estimate estimate = MemoryMeasurer.estimateBytes(list, Predicates.alwaysTrue(), sampling);
+    assertTrue(estimate.isExact());
+    assertEquals(MemoryMeasurer.measureBytes(list), estimate.getValue(), 0.0);
+    assertEquals(MemoryMeasurer.measureBytes(list), estimate.getLowerBound(), 0.0);
+    assertEquals(MemoryMeasurer.measureBytes(list), estimate.getUpperBound(), 0.0);
+
+    ObjectGraphMeasurer.FootprintEstimate footprint =
+        ObjectGraphMeasurer.estimate(list, Predicates.alwaysTrue(), sampling);
+    assertTrue(footprint.getObjects().isExact());
+    assertEquals(ObjectGraphMeasurer.measure(list).getObjects(),
+        footprint.getObjects().getValue(), 0.0);
+  }
+
+  @Test
+  public void arrayOfExactlyTheThresholdIsExact() {
+    Object[] array = new Object[1000];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = new long[i % 16];
+    }
+    Estimate estimate = MemoryMeasurer.estimateBytes(array, Predicates.alwaysTrue(),
+        Sampling.of(array.length, 100).withSeed(42));
+
+    assertTrue(estimate.isExact());
+    assertEquals(MemoryMeasurer.measureBytes(array), estimate.getValue(), 0.0);
+  }
+
+  private static void assertCovers(long exact, Estimate estimate) {
+    assertTrue(estimate + " does not cover " + exact,
+        estimate.getLowerBound() <= exact && exact <= estimate.getUpperBound());
+  }
+}
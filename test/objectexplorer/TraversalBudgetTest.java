@@ -0,0 +1,136 @@
+package objectexplorer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+import objectexplorer.MemoryMeasurer.Measurement;
+
+import org.junit.Test;
+
+/**
+ * Tests for the measurements that a {@link TraversalBudget} bounds.
+ */
+public class TraversalBudgetTest {
+  private static class Link {
+    final Link next;
+
+    Link(Link next) {
+      this.next = next;
+    }
+  }
+
+  private static Link list(int length) {
+    Link head = null;
+    for (int i = 0; i < length; i++) {
+      head = new Link(head);
+    }
+    return head;
+  }
+
+  private static Measurement measure(Object root, TraversalBudget budget) {
+    return MemoryMeasurer.measureBytes(root, Predicates.alwaysTrue(), budget);
+  }
+
+  @Test
+  public void graphOfExactlyMaxObjectsIsWhole() {
+    Link list = list(10);
+    Measurement measurement = measure(list, TraversalBudget.unlimited().withMaxObjects(10));
+
+    assertFalse(measurement.isTruncated());
+    assertNull(measurement.getExhaustion());
+    assertEquals(10, measurement.getObjects());
+    assertEquals(MemoryMeasurer.measureBytes(list), measurement.getBytes());
+  }
+
+  @Test
+  public void objectBeyondMaxObjectsIsRefused() {
+    Link list = list(10);
+    Measurement measurement = measure(list, TraversalBudget.unlimited().withMaxObjects(9));
+
+    assertTrue(measurement.isTruncated());
+    assertEquals(TraversalBudget.Exhaustion.MAX_OBJECTS, measurement.getExhaustion());
+    assertEquals(9, measurement.getObjects());
+    assertEquals(9 * MemoryMeasurer.sizeOf(list), measurement.getBytes());
+  }
+
+  @Test
+  public void graphOfExactlyMaxBytesIsWhole() {
+    Link list = list(10);
+    long bytes = MemoryMeasurer.measureBytes(list);
+    Measurement measurement = measure(list, TraversalBudget.unlimited().withMaxBytes(bytes));
+
+    assertFalse(measurement.isTruncated());
+    assertEquals(bytes, measurement.getBytes());
+  }
+
+  @Test
+  public void objectBeyondMaxBytesIsRefused() {
+    Link list = list(10);
+    long bytes = MemoryMeasurer.measureBytes(list);
+    Measurement measurement = measure(list, TraversalBudget.unlimited().withMaxBytes(bytes - 1));
+
+    assertEquals(TraversalBudget.Exhaustion.MAX_BYTES, measurement.getExhaustion());
+    assertEquals(9, measurement.getObjects());
+    assertTrue(measurement.getBytes() <= bytes - 1);
+  }
+
+  @Test
+  public void graphMeasurementOfExactlyMaxObjectsIsWhole() {
+    Link list = list(10);
+    GraphMeasurement measurement = MemoryMeasurer.measureAll(list, Predicates.alwaysTrue(),
+        TraversalBudget.unlimited().withMaxObjects(10));
+
+    assertFalse(measurement.isTruncated());
+    assertEquals(10, measurement.getFootprint().getObjects());
+  }
+
+  @Test
+  public void cancelledBeforeStartMeasuresNothing() {
+    TraversalBudget.Cancellation cancellation = new TraversalBudget.Cancellation();
+    cancellation.cancel();
+    Measurement measurement =
+        measure(list(10), TraversalBudget.unlimited().withCancellation(cancellation));
+
+    assertEquals(TraversalBudget.Exhaustion.CANCELLED, measurement.getExhaustion());
+    assertEquals(0, measurement.getObjects());
+    assertEquals(0, measurement.getBytes());
+  }
+
+  @Test
+  public void interruptedThreadMeasuresNothing() {
+    Thread.currentThread().interrupt();
+    try {
+      Measurement measurement = measure(list(10), TraversalBudget.unlimited());
+      assertEquals(TraversalBudget.Exhaustion.INTERRUPTED, measurement.getExhaustion());
+      assertEquals(0, measurement.getObjects());
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test
+  public void elementsOfArraysCountTowardsPolling() {
+    final Object marker = new Object();
+    Object[] root = { marker, new Object[5000], new Object(), new Object() };
+    final TraversalBudget.Cancellation cancellation = new TraversalBudget.Cancellation();
+    Predicate<Object> cancelAtMarker = new Predicate<Object>() {
+      public boolean apply(Object o) {
+        if (o == marker) {
+          cancellation.cancel();
+        }
+        return true;
+      }
+    };
+    Measurement measurement = MemoryMeasurer.measureBytes(root, cancelAtMarker,
+        TraversalBudget.unlimited().withCancellation(cancellation));
+
+    // the 5000 (null) elements of the array are enough work to poll before the next object
+    assertEquals(TraversalBudget.Exhaustion.CANCELLED, measurement.getExhaustion());
+    assertEquals(3, measurement.getObjects());
+  }
+}